@@ -0,0 +1,105 @@
+package kdtree;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * <h1>Datasets shared by the benchmarks</h1>
+ *
+ * <p>
+ *     Two-dimensional point sets of a given shape, and the ways a benchmarked tree can be built from them.
+ * </p>
+ */
+public final class Datasets {
+    /**
+     * Shape of a dataset, SORTED being the adversarial case for insertion
+     */
+    public enum Distribution { UNIFORM, CLUSTERED, SORTED }
+
+    /**
+     * How a benchmarked tree is built: one point at a time, one point at a time
+     * with rebuilds keeping it balanced, or all at once around the medians
+     */
+    public enum Build { INSERTED, BALANCED, BULK_LOADED }
+
+    /**
+     * Largest sorted dataset built one point at a time without rebalancing,
+     * which takes quadratic time and would not finish at the larger sizes
+     */
+    static final int MAX_DEGENERATE_SIZE = 100_000;
+
+    private Datasets() {
+    }
+
+    /**
+     * Generate a dataset of two-dimensional points
+     * @param distribution shape of the dataset
+     * @param n number of points
+     * @param seed random seed
+     * @return the points
+     */
+    static int[][] generate(Distribution distribution, int n, long seed) {
+        Random random = new Random(seed);
+        int[][] points = new int[n][];
+
+        switch (distribution) {
+            case UNIFORM:
+                for (int i = 0; i < n; i++)
+                    points[i] = new int[] {random.nextInt(), random.nextInt()};
+                break;
+            case CLUSTERED:
+                int[][] centers = new int[16][];
+                for (int c = 0; c < centers.length; c++)
+                    centers[c] = new int[] {random.nextInt(1 << 30), random.nextInt(1 << 30)};
+                for (int i = 0; i < n; i++) {
+                    int[] center = centers[random.nextInt(centers.length)];
+                    points[i] = new int[] {center[0] + (int) (random.nextGaussian() * 10_000),
+                            center[1] + (int) (random.nextGaussian() * 10_000)};
+                }
+                break;
+            case SORTED:
+                for (int i = 0; i < n; i++)
+                    points[i] = new int[] {i, i / 2};
+                break;
+        }
+
+        return points;
+    }
+
+    /**
+     * Leave out the quadratic combination of sorted points inserted one at a time above {@link #MAX_DEGENERATE_SIZE}
+     * <b>NOTE:</b> JMH cannot leave out a single combination of parameters, so the combination
+     * fails in its setup and JMH goes on with the next one
+     * @param build how the tree is built
+     * @param distribution shape of the dataset
+     * @param n number of points
+     */
+    static void skipDegenerate(Build build, Distribution distribution, int n) {
+        if (build == Build.INSERTED && distribution == Distribution.SORTED && n > MAX_DEGENERATE_SIZE)
+            throw new IllegalStateException("Skipped: inserting " + n + " sorted points without rebalancing"
+                    + " takes quadratic time, the largest size measured is " + MAX_DEGENERATE_SIZE);
+    }
+
+    /**
+     * Build a tree from a dataset
+     * @param build how to build the tree
+     * @param points the points to insert, which are copied
+     * @return the tree
+     * @throws Exception on any failure of the tree
+     */
+    static KDTree build(Build build, int[][] points) throws Exception {
+        if (build == Build.BULK_LOADED) {
+            ArrayList<KDNode> nodes = new ArrayList<>(points.length);
+            for (int[] point : points)
+                nodes.add(new KDNode(point.clone()));
+            KDTree tree = new KDTree(2);
+            tree.bulkLoad(nodes);
+            return tree;
+        }
+
+        KDTree tree = build == Build.BALANCED ? new KDTree(2, 0.75) : new KDTree(2);
+        for (int[] point : points)
+            tree.insert(point);
+        return tree;
+    }
+}
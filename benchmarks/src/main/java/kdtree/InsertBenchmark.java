@@ -0,0 +1,54 @@
+package kdtree;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <h1>Benchmarks of building a KD-Tree</h1>
+ *
+ * <p>
+ *     Time to build a whole tree from each dataset in each way. Building a tree of sorted points
+ *     one at a time without rebalancing is quadratic, which is the case this benchmark is here to show,
+ *     so that combination is only measured up to {@link Datasets#MAX_DEGENERATE_SIZE} points.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class InsertBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param
+    public Datasets.Distribution distribution;
+
+    @Param
+    public Datasets.Build build;
+
+    private int[][] points;
+
+    @Setup
+    public void setup() {
+        Datasets.skipDegenerate(build, distribution, size);
+        points = Datasets.generate(distribution, size, 42);
+    }
+
+    @Benchmark
+    public KDTree buildTree() throws Exception {
+        return Datasets.build(build, points);
+    }
+}
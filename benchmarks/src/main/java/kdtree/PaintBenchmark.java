@@ -0,0 +1,69 @@
+package kdtree;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <h1>Benchmarks of painting the visualizer offscreen</h1>
+ *
+ * <p>
+ *     {@link #paintFull()} drops the visualizer's cached render model and tree layer before
+ *     every paint, so it measures gathering and drawing the whole tree. {@link #paintCached()}
+ *     measures the repaint of an unchanged tree, which only copies the cached layer.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx6g"})
+@State(Scope.Thread)
+public class PaintBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param
+    public Datasets.Distribution distribution;
+
+    private KDTreeVisualizer visualizer;
+    private BufferedImage image;
+
+    @Setup
+    public void setup() throws Exception {
+        KDTree tree = Datasets.build(Datasets.Build.BULK_LOADED, Datasets.generate(distribution, size, 42));
+        visualizer = new KDTreeVisualizer(tree);
+        visualizer.setSize(1080, 720);
+        image = new BufferedImage(1080, 720, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private int paint() {
+        Graphics2D g2 = image.createGraphics();
+        visualizer.paintComponent(g2);
+        g2.dispose();
+        return image.getRGB(540, 360);
+    }
+
+    @Benchmark
+    public int paintFull() {
+        visualizer.invalidateRenderCache();
+        return paint();
+    }
+
+    @Benchmark
+    public int paintCached() {
+        return paint();
+    }
+}
@@ -0,0 +1,131 @@
+package kdtree;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <h1>Benchmarks of single queries on a KD-Tree</h1>
+ *
+ * <p>
+ *     Each operation answers one query, cycling through a fixed set of queries so the
+ *     branch predictor cannot learn a single path. Trees built one point at a time are
+ *     measured next to bulk-loaded ones, so a sorted dataset shows the cost of a degenerate tree.
+ *     The traversals are measured in microseconds, since each one visits the whole tree.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Thread)
+public class QueryBenchmark {
+    private static final int QUERIES = 1 << 12; // power of two, so the next query is found with a mask
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param
+    public Datasets.Distribution distribution;
+
+    @Param
+    public Datasets.Build build;
+
+    private KDTree tree;
+    private int[][] hits;
+    private int[][] misses;
+    private int[][] lowerCorners;
+    private int[][] upperCorners;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        Datasets.skipDegenerate(build, distribution, size);
+        int[][] points = Datasets.generate(distribution, size, 42);
+        tree = Datasets.build(build, points);
+
+        Random random = new Random(3);
+        hits = new int[QUERIES][];
+        for (int i = 0; i < QUERIES; i++)
+            hits[i] = points[random.nextInt(size)].clone();
+        misses = Datasets.generate(Datasets.Distribution.UNIFORM, QUERIES, 7);
+
+        // boxes around points of the dataset, sized to hold a few dozen points if they were spread evenly
+        lowerCorners = new int[QUERIES][];
+        upperCorners = new int[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            lowerCorners[i] = new int[2];
+            upperCorners[i] = new int[2];
+            for (int d = 0; d < 2; d++) {
+                double halfSide = 3.0 * ((double) tree.findMax(d) - tree.findMin(d)) / Math.sqrt(size);
+                lowerCorners[i][d] = (int) Math.max(Integer.MIN_VALUE, hits[i][d] - halfSide);
+                upperCorners[i][d] = (int) Math.min(Integer.MAX_VALUE, hits[i][d] + halfSide);
+            }
+        }
+    }
+
+    private int nextQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean findHit() throws Exception {
+        return tree.find(hits[nextQuery()]);
+    }
+
+    @Benchmark
+    public boolean findMiss() throws Exception {
+        return tree.find(misses[nextQuery()]);
+    }
+
+    @Benchmark
+    public void findMinMax(Blackhole blackhole) throws Exception {
+        int dimension = nextQuery() & 1;
+        blackhole.consume(tree.findMin(dimension));
+        blackhole.consume(tree.findMax(dimension));
+    }
+
+    @Benchmark
+    public ArrayList<KDNode> kNearest() throws Exception {
+        return tree.kNearest(misses[nextQuery()], 8);
+    }
+
+    @Benchmark
+    public int rangeCount() throws Exception {
+        int query = nextQuery();
+        return tree.rangeCount(lowerCorners[query], upperCorners[query]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String preOrder() {
+        return tree.preOrder();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String inOrder() {
+        return tree.inOrder();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String postOrder() {
+        return tree.postOrder();
+    }
+}
@@ -0,0 +1,560 @@
+package kdtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <h1>KD-Tree with points stored in leaf buckets</h1>
+ *
+ * <p>
+ *     Variant of {@link KDTree} for very large point sets. Internal nodes only hold a split,
+ *     and points live in leaf buckets of up to <code>bucketSize</code> points each. Nodes and
+ *     buckets are not objects: splits are kept in parallel <code>int</code> arrays, and the
+ *     coordinates of all buckets in one flat <code>int</code> array, the points of a bucket
+ *     side by side. A point thus costs its K coordinates plus a share of one split per bucket,
+ *     instead of a node object, a point array and a bounds array, and a search walks a few
+ *     splits and then scans one contiguous run of memory.
+ * </p>
+ * <p>
+ *     A full bucket is split in half when a point is added to it. Each split cuts the widest
+ *     dimension of the bucket's points rather than cycling through dimensions by depth, so a
+ *     bucket can always be split even if all its points share a coordinate.
+ * </p>
+ * <b>NOTE:</b> Duplicate points are discarded on insertion.
+ * Points tied with a split coordinate go to the right subtree.
+ * Points are copied into the tree, and queries return copies.
+ * Inserting points in sorted order makes a deep, unbalanced tree; load large sorted sets with {@link #bulkLoad}.
+ */
+public class BucketKDTree {
+    public static final int DEFAULT_BUCKET_SIZE = 32;
+    private static final int INITIAL_BUCKETS = 16;
+
+    private final int K; // number of dimensions
+    private final int bucketSize;
+    private int size;
+
+    // a reference to a subtree is the index of an internal node, or ~bucket for a leaf bucket
+    private int root;
+
+    private int[] splitDimensions;
+    private int[] splitValues;
+    private int[] children; // left and right reference of internal node n at 2n and 2n + 1
+    private int splitCount;
+
+    private int[] coordinates; // point i of bucket b starts at (b * bucketSize + i) * K
+    private int[] bucketCounts;
+    private int bucketCount;
+
+    private final int[] mins; // smallest coordinate of any point in each dimension
+    private final int[] maxs; // largest coordinate of any point in each dimension
+
+    /**
+     * Ctor for a BucketKDTree with buckets of {@link #DEFAULT_BUCKET_SIZE} points
+     * @param K dimensions of BucketKDTree
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     */
+    public BucketKDTree(int K) throws InvalidInitializationException {
+        this(K, DEFAULT_BUCKET_SIZE);
+    }
+
+    /**
+     * Ctor defining dimensions and bucket size of BucketKDTree
+     * @param K dimensions of BucketKDTree
+     * @param bucketSize most points held by one leaf bucket, typically 16 to 64
+     * @throws InvalidInitializationException thrown when dimensions are less than 1 or bucket size is less than 2
+     */
+    public BucketKDTree(int K, int bucketSize) throws InvalidInitializationException {
+        if (K < 1)
+            throw new InvalidInitializationException("Cannot initialize tree with dimension K = " + K + "."
+                    + " Please initialize KD-Tree with dimension of at least 1");
+        if (bucketSize < 2)
+            throw new InvalidInitializationException("Bucket size of " + bucketSize + " must be at least 2");
+
+        this.K = K;
+        this.bucketSize = bucketSize;
+        mins = new int[K];
+        maxs = new int[K];
+        clear();
+        root = ~newBucket();
+    }
+
+    /**
+     * Drop all splits and buckets
+     */
+    private void clear() {
+        splitDimensions = new int[INITIAL_BUCKETS];
+        splitValues = new int[INITIAL_BUCKETS];
+        children = new int[2 * INITIAL_BUCKETS];
+        splitCount = 0;
+        coordinates = new int[INITIAL_BUCKETS * bucketSize * K];
+        bucketCounts = new int[INITIAL_BUCKETS];
+        bucketCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Insert a single point into the BucketKDTree
+     * @param point values of each coordinate of the point to insert
+     * @return true on success, false if the point is already in the tree
+     * @throws NodeInsertionException thrown when point does not match dimensions of BucketKDTree
+     */
+    public boolean insert(int... point) throws NodeInsertionException {
+        if (point.length != K)
+            throw new NodeInsertionException("Cannot insert node of " + point.length + " dimensions"
+                    + " since it does not match the dimensions of the KD-tree!"
+                    + "\nPlease insert node of exactly " + K + " dimensions.");
+
+        int parentSlot = -1; // slot of children referring to the current subtree, -1 for the root
+        int reference = root;
+        while (reference >= 0) {
+            parentSlot = 2 * reference + (point[splitDimensions[reference]] < splitValues[reference] ? 0 : 1);
+            reference = children[parentSlot];
+        }
+
+        int bucket = ~reference;
+        if (indexInBucket(bucket, point) >= 0)
+            return false;
+
+        if (bucketCounts[bucket] == bucketSize) {
+            // both halves of a split bucket have room, so one more step reaches a bucket that is not full
+            int split = splitBucket(bucket, parentSlot);
+            bucket = ~children[2 * split + (point[splitDimensions[split]] < splitValues[split] ? 0 : 1)];
+        }
+
+        System.arraycopy(point, 0, coordinates, (bucket * bucketSize + bucketCounts[bucket]++) * K, K);
+        if (size == 0) {
+            System.arraycopy(point, 0, mins, 0, K);
+            System.arraycopy(point, 0, maxs, 0, K);
+        } else {
+            for (int d = 0; d < K; d++) {
+                mins[d] = Math.min(mins[d], point[d]);
+                maxs[d] = Math.max(maxs[d], point[d]);
+            }
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Bulk load a list of points into the BucketKDTree, rebuilding it balanced with full buckets
+     * @param points the points to insert, together with the points already in the tree
+     * @return true if all points were inserted, false if any duplicates were discarded
+     * @throws NodeInsertionException if any point does not match dimensions of BucketKDTree
+     */
+    public boolean bulkLoad(List<int[]> points) throws NodeInsertionException {
+        for (int[] point : points) {
+            if (point.length != K)
+                throw new NodeInsertionException("Cannot insert node of " + point.length + " dimensions"
+                        + " since it does not match the dimensions of the KD-tree!"
+                        + "\nPlease insert node of exactly " + K + " dimensions.");
+        }
+
+        int[][] all = new int[size + points.size()][];
+        int count = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++)
+            for (int i = 0; i < bucketCounts[bucket]; i++)
+                all[count++] = pointAt(bucket * bucketSize + i);
+        for (int[] point : points)
+            all[count++] = point;
+
+        Arrays.parallelSort(all, Arrays::compare);
+        int unique = 0;
+        for (int[] point : all) {
+            if (unique == 0 || !Arrays.equals(all[unique - 1], point))
+                all[unique++] = point;
+        }
+
+        clear();
+        root = build(all, 0, unique);
+        size = unique;
+        for (int d = 0; d < K; d++) {
+            mins[d] = Integer.MAX_VALUE;
+            maxs[d] = Integer.MIN_VALUE;
+        }
+        for (int i = 0; i < unique; i++) {
+            for (int d = 0; d < K; d++) {
+                mins[d] = Math.min(mins[d], all[i][d]);
+                maxs[d] = Math.max(maxs[d], all[i][d]);
+            }
+        }
+        return unique == all.length;
+    }
+
+    /**
+     * Helper method to build a balanced subtree, halving the points at the median of their widest dimension
+     * @param points the points, reordered in place
+     * @param from first point of the subtree
+     * @param to one past the last point of the subtree
+     * @return reference to the root of the subtree
+     */
+    private int build(int[][] points, int from, int to) {
+        if (to - from <= bucketSize) {
+            int bucket = newBucket();
+            for (int i = from; i < to; i++)
+                System.arraycopy(points[i], 0, coordinates, (bucket * bucketSize + i - from) * K, K);
+            bucketCounts[bucket] = to - from;
+            return ~bucket;
+        }
+
+        int dimension = 0;
+        long widest = -1;
+        for (int d = 0; d < K; d++) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, points[i][d]);
+                max = Math.max(max, points[i][d]);
+            }
+            if ((long) max - min > widest) {
+                widest = (long) max - min;
+                dimension = d;
+            }
+        }
+
+        int splitDimension = dimension;
+        Arrays.sort(points, from, to, Comparator.comparingInt(p -> p[splitDimension]));
+
+        // move the median to the start of its run of ties, or past the run if it starts the range
+        int median = from + (to - from) / 2;
+        int split = points[median][dimension];
+        while (median > from && points[median - 1][dimension] == split)
+            median--;
+        if (median == from) {
+            while (points[median][dimension] == split)
+                median++;
+            split = points[median][dimension];
+        }
+
+        int node = newSplit(dimension, split);
+        int left = build(points, from, median);
+        int right = build(points, median, to);
+        children[2 * node] = left;
+        children[2 * node + 1] = right;
+        return node;
+    }
+
+    /**
+     * Split a full bucket in two at the median of the widest dimension of its points
+     * @param bucket the full bucket, which keeps the points left of the split
+     * @param parentSlot slot of children referring to the bucket, -1 if the bucket is the root
+     * @return the internal node replacing the bucket
+     */
+    private int splitBucket(int bucket, int parentSlot) {
+        int start = bucket * bucketSize * K;
+
+        int dimension = 0;
+        long widest = -1;
+        for (int d = 0; d < K; d++) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < bucketSize; i++) {
+                min = Math.min(min, coordinates[start + i * K + d]);
+                max = Math.max(max, coordinates[start + i * K + d]);
+            }
+            if ((long) max - min > widest) {
+                widest = (long) max - min;
+                dimension = d;
+            }
+        }
+
+        int[] values = new int[bucketSize];
+        for (int i = 0; i < bucketSize; i++)
+            values[i] = coordinates[start + i * K + dimension];
+        Arrays.sort(values);
+
+        // points are distinct, so the widest dimension has at least two values and both sides get points
+        int split = values[bucketSize / 2];
+        if (split == values[0]) {
+            int i = bucketSize / 2;
+            while (values[i] == split)
+                i++;
+            split = values[i];
+        }
+
+        int rightBucket = newBucket();
+        start = bucket * bucketSize * K; // the coordinates may have been reallocated
+        int rightStart = rightBucket * bucketSize * K;
+        int kept = 0;
+        int moved = 0;
+        for (int i = 0; i < bucketSize; i++) {
+            int from = start + i * K;
+            if (coordinates[from + dimension] < split)
+                System.arraycopy(coordinates, from, coordinates, start + kept++ * K, K);
+            else
+                System.arraycopy(coordinates, from, coordinates, rightStart + moved++ * K, K);
+        }
+        bucketCounts[bucket] = kept;
+        bucketCounts[rightBucket] = moved;
+
+        int node = newSplit(dimension, split);
+        children[2 * node] = ~bucket;
+        children[2 * node + 1] = ~rightBucket;
+        if (parentSlot < 0)
+            root = node;
+        else
+            children[parentSlot] = node;
+        return node;
+    }
+
+    private int newBucket() {
+        if (bucketCount == bucketCounts.length) {
+            bucketCounts = Arrays.copyOf(bucketCounts, 2 * bucketCount);
+            coordinates = Arrays.copyOf(coordinates, 2 * bucketCount * bucketSize * K);
+        }
+        bucketCounts[bucketCount] = 0;
+        return bucketCount++;
+    }
+
+    private int newSplit(int dimension, int value) {
+        if (splitCount == splitValues.length) {
+            splitDimensions = Arrays.copyOf(splitDimensions, 2 * splitCount);
+            splitValues = Arrays.copyOf(splitValues, 2 * splitCount);
+            children = Arrays.copyOf(children, 4 * splitCount);
+        }
+        splitDimensions[splitCount] = dimension;
+        splitValues[splitCount] = value;
+        return splitCount++;
+    }
+
+    /**
+     * Scan a bucket for a point
+     * @param bucket the bucket to scan
+     * @param point coordinates to match
+     * @return position of the point within the bucket, or -1 if it is not there
+     */
+    private int indexInBucket(int bucket, int[] point) {
+        int start = bucket * bucketSize * K;
+        for (int i = 0; i < bucketCounts[bucket]; i++) {
+            int offset = start + i * K;
+            int d = 0;
+            while (d < K && coordinates[offset + d] == point[d])
+                d++;
+            if (d == K)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Copy of a stored point
+     * @param slot bucket * bucketSize + position of the point within the bucket
+     * @return coordinates of the point
+     */
+    private int[] pointAt(int slot) {
+        return Arrays.copyOfRange(coordinates, slot * K, slot * K + K);
+    }
+
+    /**
+     * Find point with matching coordinates
+     * @param searchPoint coordinates to match
+     * @return true if a point with matching coordinates is in the tree
+     * @throws InvalidSearchException if the query does not match the dimensions of the tree
+     */
+    public boolean find(int... searchPoint) throws InvalidSearchException {
+        checkDimensions(searchPoint);
+
+        int reference = root;
+        while (reference >= 0)
+            reference = children[2 * reference
+                    + (searchPoint[splitDimensions[reference]] < splitValues[reference] ? 0 : 1)];
+        return indexInBucket(~reference, searchPoint) >= 0;
+    }
+
+    /**
+     * Find the minimum value in the BucketKDTree, kept up to date on every insertion
+     * @param dimension chosen dimension to examine
+     * @return the minimum value of chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is less than 0 or at least K
+     */
+    public int findMin(int dimension) throws InvalidSearchException {
+        checkSearchDimension(dimension);
+        return mins[dimension];
+    }
+
+    /**
+     * Find the maximum value in the BucketKDTree, kept up to date on every insertion
+     * @param dimension chosen dimension to examine
+     * @return the maximum value of chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is less than 0 or at least K
+     */
+    public int findMax(int dimension) throws InvalidSearchException {
+        checkSearchDimension(dimension);
+        return maxs[dimension];
+    }
+
+    /**
+     * Find the point nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @return the point with the smallest Euclidean distance to the query
+     * @throws InvalidSearchException if the tree is empty or the query does not match the dimensions of the tree
+     */
+    public int[] nearest(int... searchPoint) throws InvalidSearchException {
+        return kNearest(searchPoint, 1).get(0);
+    }
+
+    /**
+     * Find the k points nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @param k number of neighbours to find
+     * @return up to k points ordered from nearest to farthest
+     * @throws InvalidSearchException if the tree is empty, k is less than 1,
+     *                                or the query does not match the dimensions of the tree
+     */
+    public ArrayList<int[]> kNearest(int[] searchPoint, int k) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        checkDimensions(searchPoint);
+        if (k < 1)
+            throw new InvalidSearchException("Queried neighbour count of " + k + " must be at least 1");
+
+        SlotNeighborHeap candidates = new SlotNeighborHeap(Math.min(k, size));
+        nearest(searchPoint, candidates);
+
+        ArrayList<int[]> points = new ArrayList<>(candidates.size());
+        for (int slot : candidates.drainSorted())
+            points.add(pointAt(slot));
+        return points;
+    }
+
+    /**
+     * Helper method to search the tree for nearest neighbours without recursion, scanning buckets
+     * whole and visiting the far side of a split only if it may hold a closer point once it is reached
+     * @param searchPoint coordinates of the query point
+     * @param candidates candidates found so far
+     */
+    private void nearest(int[] searchPoint, SlotNeighborHeap candidates) {
+        int[] stack = new int[64];
+        double[] planeDistances = new double[64]; // squared distance to the split a far side is behind, 0 for a near side
+        stack[0] = root;
+        int top = 1;
+        while (top > 0) {
+            top--;
+            int reference = stack[top];
+            double planeDistance = planeDistances[top];
+            if (planeDistance > 0 && planeDistance >= candidates.worstDistance())
+                continue;
+
+            if (reference < 0) {
+                int bucket = ~reference;
+                int slot = bucket * bucketSize;
+                for (int i = 0; i < bucketCounts[bucket]; i++, slot++) {
+                    int offset = slot * K;
+                    double distance = 0;
+                    for (int d = 0; d < K; d++) {
+                        double diff = (double) coordinates[offset + d] - searchPoint[d];
+                        distance += diff * diff;
+                    }
+                    candidates.offer(slot, distance);
+                }
+                continue;
+            }
+
+            int splitDimension = splitDimensions[reference];
+            int split = splitValues[reference];
+            boolean leftFirst = searchPoint[splitDimension] < split;
+            double planeDifference = (double) searchPoint[splitDimension] - split;
+
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                planeDistances = Arrays.copyOf(planeDistances, 2 * planeDistances.length);
+            }
+            // the near side is pushed last so it is searched first
+            stack[top] = children[2 * reference + (leftFirst ? 1 : 0)];
+            planeDistances[top++] = planeDifference * planeDifference;
+            stack[top] = children[2 * reference + (leftFirst ? 0 : 1)];
+            planeDistances[top++] = 0;
+        }
+    }
+
+    /**
+     * Find the height of the BucketKDTree without recursion, counting the level of the buckets
+     * @return the height of the BucketKDTree
+     */
+    public int height() {
+        if (size == 0)
+            return 0;
+
+        int[] stack = new int[64];
+        int[] levels = new int[64]; // level of each stacked subtree, 1 for the root
+        stack[0] = root;
+        levels[0] = 1;
+        int top = 1;
+
+        int height = 0;
+        while (top > 0) {
+            top--;
+            int reference = stack[top];
+            int level = levels[top];
+            height = Math.max(height, level);
+            if (reference < 0)
+                continue;
+
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                levels = Arrays.copyOf(levels, 2 * levels.length);
+            }
+            stack[top] = children[2 * reference];
+            levels[top++] = level + 1;
+            stack[top] = children[2 * reference + 1];
+            levels[top++] = level + 1;
+        }
+        return height;
+    }
+
+    /**
+     * Visit every point of the BucketKDTree without recursion, bucket by bucket from the leftmost bucket
+     * @param visitor callback receiving a copy of each point
+     */
+    public void forEach(Consumer<int[]> visitor) {
+        int[] stack = new int[64];
+        stack[0] = root;
+        int top = 1;
+        while (top > 0) {
+            int reference = stack[--top];
+            if (reference < 0) {
+                int bucket = ~reference;
+                for (int i = 0; i < bucketCounts[bucket]; i++)
+                    visitor.accept(pointAt(bucket * bucketSize + i));
+                continue;
+            }
+
+            if (top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            stack[top++] = children[2 * reference + 1];
+            stack[top++] = children[2 * reference];
+        }
+    }
+
+    public int getK() { return K; }
+
+    public int getSize() { return size; }
+
+    public int getBucketSize() { return bucketSize; }
+
+    public int getBucketCount() { return bucketCount; }
+
+    private void checkDimensions(int[] searchPoint) throws InvalidSearchException {
+        if (searchPoint.length != K)
+            throw new InvalidSearchException("Search node's dimensions of " + searchPoint.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+    }
+
+    private void checkSearchDimension(int dimension) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        if (dimension < 0 || dimension >= K)
+            throw new InvalidSearchException("Queried search dimension of " + dimension
+                    + " must be at least 0 and less than the KD-tree's dimension of " + K);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("Points by bucket:");
+        forEach(point -> out.append(" ").append(Arrays.toString(point)));
+        return out.toString();
+    }
+}
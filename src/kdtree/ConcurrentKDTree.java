@@ -0,0 +1,321 @@
+package kdtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * <h1>Thread-safe KDTree for many readers and a single writer</h1>
+ *
+ * <p>
+ *     Wraps a {@link KDTree} that only writers touch, one at a time under the write lock. After
+ *     every write the writer publishes a snapshot of the tree in a volatile field, copying only
+ *     the nodes the write changed (see {@link KDTree#snapshot()}). Queries run on the latest
+ *     snapshot without taking any lock, so readers never wait for each other or for the writer,
+ *     and the writer never waits for readers.
+ * </p>
+ * <b>NOTE:</b> nodes returned by queries belong to the snapshot they were found in. They never
+ * change, even when later writes move or delete them, and have no parent links.
+ */
+public class ConcurrentKDTree {
+    private final KDTree tree; // only used while holding the write lock
+    private final ReentrantLock writeLock;
+    private volatile Snapshot snapshot;
+    private volatile Consumer<KDNode> insertionListener;
+
+    /**
+     * State of the tree published to readers after a write
+     */
+    private static final class Snapshot {
+        private final KDTree tree;
+        private final boolean denseOrder; // the live nodes have insertion indices 0 to size - 1
+        private volatile KDNode[] insertionOrder; // live nodes by insertion index, gathered on first use
+
+        private Snapshot(KDTree tree, boolean denseOrder) {
+            this.tree = tree;
+            this.denseOrder = denseOrder;
+        }
+
+        /**
+         * Live nodes of the snapshot in insertion order
+         * <b>NOTE:</b> readers racing to gather the order each build the same array, and any of them may be kept
+         * @return the nodes sorted by insertion index
+         */
+        private KDNode[] insertionOrder() {
+            KDNode[] order = insertionOrder;
+            if (order == null) {
+                order = new KDNode[tree.getSize()];
+                int count = 0;
+                for (KDNode node : tree)
+                    order[count++] = node;
+                Arrays.sort(order, Comparator.comparingInt(KDNode::getInsertionIndex));
+                insertionOrder = order;
+            }
+            return order;
+        }
+
+        /**
+         * Position of a node in the insertion order of the live nodes
+         * @param insertionIndex insertion index of the node
+         * @return the position, -1 if no live node has this index
+         */
+        private int positionOf(int insertionIndex) {
+            if (denseOrder)
+                return insertionIndex;
+
+            KDNode[] order = insertionOrder();
+            int low = 0;
+            int high = order.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midIndex = order[mid].getInsertionIndex();
+                if (midIndex < insertionIndex)
+                    low = mid + 1;
+                else if (midIndex > insertionIndex)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Ctor for an empty thread-safe tree
+     * @param K dimensions of KDTree
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     */
+    public ConcurrentKDTree(int K) throws InvalidInitializationException {
+        this(new KDTree(K));
+    }
+
+    /**
+     * Ctor wrapping an existing tree
+     * <b>NOTE:</b> the tree must not be used directly once it is wrapped
+     * @param tree the tree to guard
+     */
+    public ConcurrentKDTree(KDTree tree) {
+        this.tree = tree;
+        this.writeLock = new ReentrantLock();
+        publish();
+    }
+
+    /**
+     * Publish a snapshot of the tree to readers, run by the writer after every write
+     */
+    private void publish() {
+        Snapshot current = snapshot;
+        if (current != null && current.tree.getModificationCount() == tree.getModificationCount())
+            return;
+
+        snapshot = new Snapshot(tree.snapshot(), tree.getInsertionOrder().size() == tree.getSize());
+    }
+
+    ///////////////////
+    ///// Writers /////
+    ///////////////////
+
+    /**
+     * Insert a single point into the KDTree
+     * <b>NOTE:</b> the coordinates are copied, so the caller may reuse its array
+     * @param coordinates values of each coordinate of the point to insert
+     * @return true on success
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     * @throws NodeInsertionException thrown when point does not match dimensions of KDTree
+     */
+    public boolean insert(int... coordinates) throws InvalidInitializationException, NodeInsertionException {
+        return insert(new KDNode(coordinates.clone()));
+    }
+
+    /**
+     * Insert a single node into the KDTree
+     * @param inNode node to insert
+     * @return true on success
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     * @throws NodeInsertionException thrown when node does not match dimensions of KDTree
+     */
+    public boolean insert(KDNode inNode) throws InvalidInitializationException, NodeInsertionException {
+        writeLock.lock();
+        try {
+            boolean inserted = tree.insert(inNode);
+            publish();
+            Consumer<KDNode> listener = insertionListener;
+            if (inserted && listener != null)
+                listener.accept(inNode);
+            return inserted;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Bulk load a list of nodes into the KDTree as a balanced tree
+     * @param nodes the list of nodes to insert
+     * @return true if all nodes were inserted, false if any duplicates were discarded
+     * @throws NodeInsertionException if any node does not match dimensions of KDTree
+     */
+    public boolean bulkLoad(ArrayList<KDNode> nodes) throws NodeInsertionException {
+        writeLock.lock();
+        try {
+            boolean loaded = tree.bulkLoad(nodes);
+            publish();
+            return loaded;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Delete the node with matching coordinates
+     * @param deletePoint coordinates of the node to delete
+     * @return true if a node was deleted
+     * @throws InvalidSearchException if the point does not match the dimensions of the tree
+     */
+    public boolean delete(int... deletePoint) throws InvalidSearchException {
+        writeLock.lock();
+        try {
+            boolean deleted = tree.delete(deletePoint);
+            publish();
+            return deleted;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Move a node to new coordinates
+     * @param oldPoint coordinates of the node to move
+     * @param newPoint coordinates to move the node to
+     * @return true if the node was moved
+     * @throws InvalidSearchException if either point does not match the dimensions of the tree
+     */
+    public boolean move(int[] oldPoint, int[] newPoint) throws InvalidSearchException {
+        writeLock.lock();
+        try {
+            boolean moved = tree.move(oldPoint, newPoint);
+            publish();
+            return moved;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Rebuild the whole tree without its tombstones
+     */
+    public void compact() {
+        writeLock.lock();
+        try {
+            tree.compact();
+            publish();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    ///////////////////
+    ///// Readers /////
+    ///////////////////
+
+    public boolean find(int... searchPoint) throws InvalidSearchException {
+        return snapshot.tree.find(searchPoint);
+    }
+
+    public boolean[] findAll(List<int[]> searchPoints) throws InvalidSearchException {
+        return snapshot.tree.findAll(searchPoints);
+    }
+
+    public KDNode nearest(int... searchPoint) throws InvalidSearchException {
+        return snapshot.tree.nearest(searchPoint);
+    }
+
+    public ArrayList<KDNode> kNearest(int[] searchPoint, int k) throws InvalidSearchException {
+        return snapshot.tree.kNearest(searchPoint, k);
+    }
+
+    /**
+     * Find the k nodes nearest to each point of a batch, see {@link KDTree#kNearestAll}
+     * <b>NOTE:</b> each neighbour is reported by its position in {@link #getInsertionOrder()}
+     * as of the snapshot searched, which only needs looking up while deleted nodes are still
+     * listed in the insertion order of the wrapped tree
+     */
+    public void kNearestAll(int[][] searchPoints, int k, int[] outIndices, double[] outDistances)
+            throws InvalidSearchException {
+        Snapshot current = snapshot;
+        current.tree.kNearestAll(searchPoints, k, outIndices, outDistances);
+        if (current.denseOrder)
+            return;
+
+        int slots = searchPoints.length * k;
+        for (int i = 0; i < slots; i++) {
+            if (outIndices[i] >= 0)
+                outIndices[i] = current.positionOf(outIndices[i]);
+        }
+    }
+
+    public ArrayList<KDNode> rangeQuery(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        return snapshot.tree.rangeQuery(lowerCorner, upperCorner);
+    }
+
+    public int rangeCount(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        return snapshot.tree.rangeCount(lowerCorner, upperCorner);
+    }
+
+    public int findMin(int dimension) throws InvalidSearchException {
+        return snapshot.tree.findMin(dimension);
+    }
+
+    public int findMax(int dimension) throws InvalidSearchException {
+        return snapshot.tree.findMax(dimension);
+    }
+
+    public String preOrder() { return snapshot.tree.preOrder(); }
+
+    public String inOrder() { return snapshot.tree.inOrder(); }
+
+    public String postOrder() { return snapshot.tree.postOrder(); }
+
+    public int height() { return snapshot.tree.height(); }
+
+    public int getK() { return tree.getK(); }
+
+    public int getSize() { return snapshot.tree.getSize(); }
+
+    public long getModificationCount() { return snapshot.tree.getModificationCount(); }
+
+    public long getRebuildCount() { return snapshot.tree.getRebuildCount(); }
+
+    /**
+     * Set an action to run for every node inserted through {@link #insert}, once the snapshot
+     * holding the node is published and before the write lock is released
+     * <b>NOTE:</b> the action runs on the writing thread and must be quick and must not use this tree.
+     * It receives the node of the wrapped tree, which later writes may change
+     * @param insertionListener receives each inserted node, null to remove the listener
+     */
+    public void setInsertionListener(Consumer<KDNode> insertionListener) {
+        this.insertionListener = insertionListener;
+    }
+
+    /**
+     * Latest snapshot of the tree, for classes of this package that walk its nodes
+     * <b>NOTE:</b> the snapshot never changes, and must not be changed
+     * @return the snapshot published by the last write
+     */
+    KDTree getSnapshot() { return snapshot.tree; }
+
+    /**
+     * Copy of the live nodes of the KDTree in the order they were inserted
+     * @return the live nodes in insertion order
+     */
+    public ArrayList<KDNode> getInsertionOrder() {
+        return new ArrayList<>(Arrays.asList(snapshot.insertionOrder()));
+    }
+
+    @Override
+    public String toString() {
+        return "In order traversal: " + inOrder();
+    }
+}
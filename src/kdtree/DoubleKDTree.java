@@ -0,0 +1,587 @@
+package kdtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * <h1>KD-Tree of double precision coordinates</h1>
+ *
+ * <p>
+ *     Specialization of {@link KDTree} for <code>double</code> coordinates, stored in primitive
+ *     arrays so no coordinate is ever boxed. Supports insertion, exact search, minimum and
+ *     maximum per dimension, traversals and nearest neighbour search.
+ * </p>
+ * <p>
+ *     Distances between finite points range from {@link Double#MIN_VALUE} to well beyond
+ *     {@link Double#MAX_VALUE}, more than a double can hold. Neighbours are therefore ranked by
+ *     a distance key: the differences are scaled by a power of two near the largest of them,
+ *     in the manner of {@link Math#hypot}, and the key keeps the binary exponent of the distance
+ *     apart from its significand, so it neither overflows nor underflows at either end.
+ * </p>
+ * <b>NOTE:</b> Only finite coordinates are accepted. Duplicate points are discarded on insertion,
+ * with 0.0 and -0.0 counting as the same coordinate.
+ * Points tied with a split coordinate go to the right subtree.
+ * Inserted points are copied, and so is every point the tree hands out, so callers never share its arrays.
+ */
+public class DoubleKDTree {
+    private Node root;
+    private final int K; // number of dimensions
+    private int size;
+    private final double[] mins; // smallest coordinate of any point in each dimension
+    private final double[] maxs; // largest coordinate of any point in each dimension
+
+    /**
+     * Node holding one point and its two subtrees
+     */
+    private static final class Node {
+        final double[] point;
+        Node left;
+        Node right;
+
+        Node(double[] point) {
+            this.point = point;
+        }
+    }
+
+    /**
+     * Ctor only for defining dimensions of DoubleKDTree
+     * @param K dimensions of DoubleKDTree
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     */
+    public DoubleKDTree(int K) throws InvalidInitializationException {
+        if (K < 1)
+            throw new InvalidInitializationException("Cannot initialize tree with dimension K = " + K + "."
+                    + " Please initialize KD-Tree with dimension of at least 1");
+
+        this.K = K;
+        mins = new double[K];
+        maxs = new double[K];
+    }
+
+    /**
+     * Insert a single point into the DoubleKDTree
+     * <b>NOTE:</b> the coordinates are copied, so the caller may reuse its array
+     * @param coordinates values of each coordinate of the point to insert
+     * @return true on success, false if the point is already in the tree
+     * @throws NodeInsertionException thrown when point does not match dimensions of DoubleKDTree
+     *                                or has a coordinate that is not finite
+     */
+    public boolean insert(double... coordinates) throws NodeInsertionException {
+        if (coordinates.length != K)
+            throw new NodeInsertionException("Cannot insert node of " + coordinates.length + " dimensions"
+                    + " since it does not match the dimensions of the KD-tree!"
+                    + "\nPlease insert node of exactly " + K + " dimensions.");
+        if (!isFinite(coordinates))
+            throw new NodeInsertionException("Cannot insert node " + Arrays.toString(coordinates)
+                    + " since its coordinates must all be finite");
+
+        Node inNode = new Node(coordinates.clone());
+        if (root == null) {
+            root = inNode;
+            System.arraycopy(coordinates, 0, mins, 0, K);
+            System.arraycopy(coordinates, 0, maxs, 0, K);
+            size = 1;
+            return true;
+        }
+
+        int depth = 0;
+        Node current = root;
+        while (true) {
+            if (samePoint(current.point, coordinates))
+                return false;
+
+            int currentDimension = depth % K;
+            boolean left = coordinates[currentDimension] < current.point[currentDimension];
+            Node child = left ? current.left : current.right;
+            if (child == null) {
+                if (left)
+                    current.left = inNode;
+                else
+                    current.right = inNode;
+                break;
+            }
+            current = child;
+            depth++;
+        }
+
+        for (int d = 0; d < K; d++) {
+            mins[d] = Math.min(mins[d], coordinates[d]);
+            maxs[d] = Math.max(maxs[d], coordinates[d]);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Find point with matching coordinates
+     * @param searchPoint coordinates to match
+     * @return true if a point with matching coordinates is in the tree
+     * @throws InvalidSearchException if the query does not match the dimensions of the tree or is not finite
+     */
+    public boolean find(double... searchPoint) throws InvalidSearchException {
+        checkDimensions(searchPoint);
+
+        int depth = 0;
+        Node current = root;
+        while (current != null) {
+            if (samePoint(current.point, searchPoint))
+                return true;
+
+            int currentDimension = depth % K;
+            current = searchPoint[currentDimension] < current.point[currentDimension] ? current.left : current.right;
+            depth++;
+        }
+        return false;
+    }
+
+    /**
+     * Find the minimum value in the DoubleKDTree, kept up to date on every insertion
+     * @param dimension chosen dimension to examine
+     * @return the minimum value of chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is less than 0 or at least K
+     */
+    public double findMin(int dimension) throws InvalidSearchException {
+        checkSearchDimension(dimension);
+        return mins[dimension];
+    }
+
+    /**
+     * Find the maximum value in the DoubleKDTree, kept up to date on every insertion
+     * @param dimension chosen dimension to examine
+     * @return the maximum value of chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is less than 0 or at least K
+     */
+    public double findMax(int dimension) throws InvalidSearchException {
+        checkSearchDimension(dimension);
+        return maxs[dimension];
+    }
+
+    /**
+     * Find the point nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @return the point with the smallest Euclidean distance to the query
+     * @throws InvalidSearchException if the tree is empty or the query does not match the dimensions
+     *                                of the tree or is not finite
+     */
+    public double[] nearest(double... searchPoint) throws InvalidSearchException {
+        return kNearest(searchPoint, 1).get(0);
+    }
+
+    /**
+     * Find the k points nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @param k number of neighbours to find
+     * @return up to k points ordered from nearest to farthest
+     * @throws InvalidSearchException if the tree is empty, k is less than 1,
+     *                                or the query does not match the dimensions of the tree or is not finite
+     */
+    public ArrayList<double[]> kNearest(double[] searchPoint, int k) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        checkDimensions(searchPoint);
+        if (k < 1)
+            throw new InvalidSearchException("Queried neighbour count of " + k + " must be at least 1");
+
+        Candidates candidates = new Candidates(Math.min(k, size));
+        nearest(searchPoint, candidates);
+        return candidates.drainSorted();
+    }
+
+    /**
+     * Helper method to search the tree for nearest neighbours without recursion, visiting the side
+     * of the query first and the other side only if it may hold a closer point once it is reached
+     * @param searchPoint coordinates of the query point
+     * @param candidates candidates found so far
+     */
+    private void nearest(double[] searchPoint, Candidates candidates) {
+        Node[] stack = new Node[64];
+        Node[] splitters = new Node[64]; // parent whose plane a far side is behind, null for a near side
+        int[] depths = new int[64];
+        stack[0] = root;
+        int top = 1;
+        while (top > 0) {
+            top--;
+            Node current = stack[top];
+            Node splitter = splitters[top];
+            int depth = depths[top];
+            if (splitter != null) {
+                int splitDimension = (depth - 1) % K;
+                if (!candidates.planeMayBeCloser(searchPoint[splitDimension], splitter.point[splitDimension]))
+                    continue;
+            }
+
+            candidates.offer(current.point, searchPoint);
+
+            int currentDimension = depth % K;
+            boolean leftFirst = searchPoint[currentDimension] < current.point[currentDimension];
+            Node nearSide = leftFirst ? current.left : current.right;
+            Node farSide = leftFirst ? current.right : current.left;
+
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                splitters = Arrays.copyOf(splitters, 2 * splitters.length);
+                depths = Arrays.copyOf(depths, 2 * depths.length);
+            }
+            // the near side is pushed last so it is searched first
+            if (farSide != null) {
+                stack[top] = farSide;
+                splitters[top] = current;
+                depths[top++] = depth + 1;
+            }
+            if (nearSide != null) {
+                stack[top] = nearSide;
+                splitters[top] = null;
+                depths[top++] = depth + 1;
+            }
+        }
+    }
+
+    /**
+     * Find the height of the DoubleKDTree without recursion
+     * @return the height of the DoubleKDTree
+     */
+    public int height() {
+        Node[] stack = new Node[64];
+        int[] levels = new int[64]; // level of each stacked node, 1 for the root
+        int top = 0;
+        if (root != null) {
+            stack[0] = root;
+            levels[top++] = 1;
+        }
+
+        int height = 0;
+        while (top > 0) {
+            top--;
+            Node current = stack[top];
+            int level = levels[top];
+            height = Math.max(height, level);
+
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                levels = Arrays.copyOf(levels, 2 * levels.length);
+            }
+            if (current.left != null) {
+                stack[top] = current.left;
+                levels[top++] = level + 1;
+            }
+            if (current.right != null) {
+                stack[top] = current.right;
+                levels[top++] = level + 1;
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Find the pre-order traversal of the DoubleKDTree
+     * @return the pre-order traversal of the DoubleKDTree
+     */
+    public String preOrder() {
+        StringBuilder out = new StringBuilder();
+        preOrder(point -> out.append(Arrays.toString(point)).append(" "));
+        return out.toString();
+    }
+
+    /**
+     * Find the in-order traversal of the DoubleKDTree
+     * @return the in-order traversal of the DoubleKDTree
+     */
+    public String inOrder() {
+        StringBuilder out = new StringBuilder();
+        inOrder(point -> out.append(Arrays.toString(point)).append(" "));
+        return out.toString();
+    }
+
+    /**
+     * Find the post-order traversal of the DoubleKDTree
+     * @return the post-order traversal of the DoubleKDTree
+     */
+    public String postOrder() {
+        StringBuilder out = new StringBuilder();
+        postOrder(point -> out.append(Arrays.toString(point)).append(" "));
+        return out.toString();
+    }
+
+    /**
+     * Visit the points of the DoubleKDTree in pre-order without recursion
+     * @param visitor callback for each point
+     */
+    public void preOrder(Consumer<double[]> visitor) {
+        Node[] stack = new Node[64];
+        int top = 0;
+        if (root != null)
+            stack[top++] = root;
+        while (top > 0) {
+            Node current = stack[--top];
+            visitor.accept(current.point.clone());
+            if (top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            if (current.right != null)
+                stack[top++] = current.right;
+            if (current.left != null)
+                stack[top++] = current.left;
+        }
+    }
+
+    /**
+     * Visit the points of the DoubleKDTree in-order without recursion
+     * @param visitor callback for each point
+     */
+    public void inOrder(Consumer<double[]> visitor) {
+        Node[] stack = new Node[64];
+        int top = 0;
+        Node current = root;
+        while (current != null || top > 0) {
+            while (current != null) {
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[top++] = current;
+                current = current.left;
+            }
+            current = stack[--top];
+            visitor.accept(current.point.clone());
+            current = current.right;
+        }
+    }
+
+    /**
+     * Visit the points of the DoubleKDTree in post-order without recursion
+     * @param visitor callback for each point
+     */
+    public void postOrder(Consumer<double[]> visitor) {
+        Node[] stack = new Node[64];
+        int top = 0;
+        Node current = root;
+        Node lastVisited = null;
+        while (current != null || top > 0) {
+            while (current != null) {
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[top++] = current;
+                current = current.left;
+            }
+            Node peek = stack[top - 1];
+            if (peek.right != null && peek.right != lastVisited) {
+                current = peek.right;
+            } else {
+                visitor.accept(peek.point.clone());
+                lastVisited = stack[--top];
+            }
+        }
+    }
+
+    public int getK() { return K; }
+
+    public int getSize() { return size; }
+
+    private void checkDimensions(double[] searchPoint) throws InvalidSearchException {
+        if (searchPoint.length != K)
+            throw new InvalidSearchException("Search node's dimensions of " + searchPoint.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+        if (!isFinite(searchPoint))
+            throw new InvalidSearchException("Search node " + Arrays.toString(searchPoint)
+                    + " must have finite coordinates");
+    }
+
+    private static boolean isFinite(double[] point) {
+        for (double coordinate : point) {
+            if (!Double.isFinite(coordinate))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compare coordinates numerically, so 0.0 and -0.0 match unlike in {@link Arrays#equals(double[], double[])}
+     */
+    private static boolean samePoint(double[] a, double[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void checkSearchDimension(int dimension) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        if (dimension < 0 || dimension >= K)
+            throw new InvalidSearchException("Queried search dimension of " + dimension
+                    + " must be at least 0 and less than the KD-tree's dimension of " + K);
+    }
+
+    ///////////////////////////////////
+    ///// Overflow-Free Distances /////
+    ///////////////////////////////////
+
+    private static final int FRACTION_BITS = 52;
+    private static final long FRACTION_MASK = (1L << FRACTION_BITS) - 1;
+    private static final int KEY_EXPONENT_BIAS = 1100; // makes the exponent of the smallest distance, -1074, positive
+
+    /**
+     * Euclidean distance between two points as a key that orders like the distance itself
+     * <p>
+     *     Every difference is scaled by the power of two of the largest one, which is exact, so the
+     *     sum of squares lies between 1 and K. The key holds the binary exponent of the distance above
+     *     the fraction bits of its significand, so keys compared as unsigned longs are ordered like
+     *     the distances. The exponent takes 12 bits, so a key may have the sign bit set.
+     *     Equal points have key 0.
+     * </p>
+     * @param a first point
+     * @param b second point
+     * @return the distance key, to compare with {@link Long#compareUnsigned}
+     */
+    static long distanceKey(double[] a, double[] b) {
+        int largest = Integer.MIN_VALUE;
+        for (int i = 0; i < a.length; i++)
+            largest = Math.max(largest, differenceExponent(a[i], b[i]));
+        if (largest == Integer.MIN_VALUE)
+            return 0;
+
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            double scaled = scaledDifference(a[i], b[i], largest);
+            sum += scaled * scaled;
+        }
+        return key(largest, Math.sqrt(sum));
+    }
+
+    /**
+     * Distance between two coordinates as a key comparable with {@link #distanceKey}
+     */
+    static long distanceKey(double a, double b) {
+        int exponent = differenceExponent(a, b);
+        if (exponent == Integer.MIN_VALUE)
+            return 0;
+
+        return key(exponent, Math.abs(scaledDifference(a, b, exponent)));
+    }
+
+    /**
+     * Binary exponent of the difference of two coordinates, also for differences that are
+     * subnormal or too large for a double
+     * @return the exponent, or {@link Integer#MIN_VALUE} if the coordinates are equal
+     */
+    private static int differenceExponent(double a, double b) {
+        double diff = Math.abs(a - b);
+        if (diff == 0)
+            return Integer.MIN_VALUE;
+        if (diff == Double.POSITIVE_INFINITY)
+            return Math.getExponent(a * 0.5 - b * 0.5) + 1; // both are large, so halving them is exact
+        if (diff < Double.MIN_NORMAL)
+            return Math.getExponent(diff * 0x1p54) - 54;
+        return Math.getExponent(diff);
+    }
+
+    /**
+     * Difference of two coordinates divided by 2 to the power of an exponent at least the difference's own
+     */
+    private static double scaledDifference(double a, double b, int exponent) {
+        double diff = a - b;
+        if (Double.isInfinite(diff))
+            return Math.scalb(a * 0.5 - b * 0.5, 1 - exponent);
+        return Math.scalb(diff, -exponent);
+    }
+
+    /**
+     * Pack a distance given as 2 to the power of exponent times a significand into a key
+     * @param exponent binary exponent the significand is scaled by
+     * @param significand positive significand, which may be 2 or more
+     */
+    private static long key(int exponent, double significand) {
+        int keyExponent = exponent + Math.getExponent(significand) + KEY_EXPONENT_BIAS;
+        return (long) keyExponent << FRACTION_BITS | (Double.doubleToRawLongBits(significand) & FRACTION_MASK);
+    }
+
+    /**
+     * Bounded max-heap of the nearest points found so far, keyed by {@link #distanceKey}
+     */
+    private static final class Candidates {
+        private final double[][] points;
+        private final long[] distances;
+        private int count;
+
+        Candidates(int capacity) {
+            points = new double[capacity][];
+            distances = new long[capacity];
+        }
+
+        /**
+         * Offer a point, replacing the farthest candidate if the heap is full and the point is closer
+         * @param point candidate point
+         * @param searchPoint coordinates of the query point
+         */
+        void offer(double[] point, double[] searchPoint) {
+            long distance = distanceKey(point, searchPoint);
+            if (count < points.length) {
+                int i = count++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (Long.compareUnsigned(distances[parent], distance) >= 0)
+                        break;
+                    points[i] = points[parent];
+                    distances[i] = distances[parent];
+                    i = parent;
+                }
+                points[i] = point;
+                distances[i] = distance;
+            } else if (Long.compareUnsigned(distance, distances[0]) < 0) {
+                siftDown(point, distance);
+            }
+        }
+
+        /**
+         * Check whether the far side of a splitting plane may hold a closer point than the farthest candidate
+         * @param coordinate coordinate of the query in the split dimension
+         * @param split coordinate of the splitting plane
+         * @return true if the far side must be searched
+         */
+        boolean planeMayBeCloser(double coordinate, double split) {
+            return count < points.length || Long.compareUnsigned(distanceKey(coordinate, split), distances[0]) < 0;
+        }
+
+        /**
+         * Empty the heap into a list ordered from nearest to farthest
+         * @return the candidate points, nearest first
+         */
+        ArrayList<double[]> drainSorted() {
+            double[][] sorted = new double[count][];
+            while (count > 0) {
+                sorted[count - 1] = points[0].clone();
+                count--;
+                if (count > 0)
+                    siftDown(points[count], distances[count]);
+                points[count] = null;
+            }
+            return new ArrayList<>(Arrays.asList(sorted));
+        }
+
+        /**
+         * Place a candidate at the root and sift it down to its place
+         */
+        private void siftDown(double[] point, long distance) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= count)
+                    break;
+                if (child + 1 < count && Long.compareUnsigned(distances[child + 1], distances[child]) > 0)
+                    child++;
+                if (Long.compareUnsigned(distances[child], distance) <= 0)
+                    break;
+                points[i] = points[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            points[i] = point;
+            distances[i] = distance;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "In order traversal: " + inOrder();
+    }
+}
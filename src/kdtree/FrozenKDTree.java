@@ -0,0 +1,258 @@
+package kdtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * <h1>Immutable KD-Tree stored implicitly in one array</h1>
+ *
+ * <p>
+ *     Snapshot of a {@link KDTree} made by {@link KDTree#freeze()}. The points are laid out as
+ *     a complete binary tree in breadth-first order in one flat <code>int</code> array: the
+ *     children of the point at index i are at 2i + 1 and 2i + 2, and a point at depth d splits
+ *     dimension d % K. There are no node objects and no child references, so a query computes
+ *     where to go next instead of loading it, the top levels of the tree share a few cache
+ *     lines, and the garbage collector sees a single array however large the tree is.
+ * </p>
+ * <b>NOTE:</b> To keep the tree complete, the split of every subtree is placed by its size
+ * rather than at the median of its points, so points tied with a split coordinate may lie in
+ * either subtree. Queries for a point on a split therefore look on both sides.
+ */
+public class FrozenKDTree {
+    private final int K; // number of dimensions
+    private final int size;
+    private final int[] coordinates; // point at breadth-first index i starts at i * K
+    private final int[] mins; // smallest coordinate of any point in each dimension
+    private final int[] maxs; // largest coordinate of any point in each dimension
+
+    /**
+     * Ctor freezing the live nodes of a tree
+     * @param tree the tree to copy, which is left unchanged
+     */
+    FrozenKDTree(KDTree tree) {
+        K = tree.getK();
+        size = tree.getSize();
+        coordinates = new int[size * K];
+        mins = new int[K];
+        maxs = new int[K];
+
+        KDNode[] nodes = new KDNode[size];
+        int[] count = {0};
+        tree.preOrder(node -> nodes[count[0]++] = node);
+        build(nodes, 0, size, 0, 0);
+
+        if (size > 0) {
+            System.arraycopy(coordinates, 0, mins, 0, K);
+            System.arraycopy(coordinates, 0, maxs, 0, K);
+        }
+        for (int i = 0; i < coordinates.length; i++) {
+            mins[i % K] = Math.min(mins[i % K], coordinates[i]);
+            maxs[i % K] = Math.max(maxs[i % K], coordinates[i]);
+        }
+    }
+
+    /**
+     * Helper method to place a range of nodes as the subtree rooted at a breadth-first index
+     * @param nodes nodes to place, reordered in place
+     * @param lo first index of the range (inclusive)
+     * @param hi last index of the range (exclusive), hi - lo being the size of the subtree
+     * @param index breadth-first index of the root of the subtree
+     * @param depth depth of the root of the subtree
+     */
+    private void build(KDNode[] nodes, int lo, int hi, int index, int depth) {
+        if (lo >= hi)
+            return;
+
+        // the left subtree holds a fixed number of nodes, so the root is the node of that rank
+        int split = lo + subtreeSize(2L * index + 1);
+        KDTreeBuilder.select(nodes, lo, hi - 1, split, depth % K);
+        System.arraycopy(nodes[split].getPoint(), 0, coordinates, index * K, K);
+
+        build(nodes, lo, split, 2 * index + 1, depth + 1);
+        build(nodes, split + 1, hi, 2 * index + 2, depth + 1);
+    }
+
+    /**
+     * Number of points in the subtree rooted at a breadth-first index
+     * @param index breadth-first index of the root of the subtree
+     * @return the size of the subtree, 0 if the index is past the last point
+     */
+    private int subtreeSize(long index) {
+        int subtreeSize = 0;
+        long levelWidth = 1;
+        for (long first = index; first < size; first = 2 * first + 1, levelWidth *= 2)
+            subtreeSize += (int) Math.min(levelWidth, size - first);
+        return subtreeSize;
+    }
+
+    private static int depthOf(int index) {
+        return 31 - Integer.numberOfLeadingZeros(index + 1);
+    }
+
+    /**
+     * Find point with matching coordinates
+     * @param searchPoint coordinates to match
+     * @return true if a point with matching coordinates is in the tree
+     * @throws InvalidSearchException if the query does not match the dimensions of the tree
+     */
+    public boolean find(int... searchPoint) throws InvalidSearchException {
+        checkDimensions(searchPoint);
+
+        // a complete tree has at most 31 levels, and each level defers at most one subtree
+        int[] stack = new int[32];
+        int top = 0;
+        if (size > 0)
+            stack[top++] = 0;
+        while (top > 0) {
+            int index = stack[--top];
+            while (index < size) {
+                int offset = index * K;
+                int d = 0;
+                while (d < K && coordinates[offset + d] == searchPoint[d])
+                    d++;
+                if (d == K)
+                    return true;
+
+                int currentDimension = depthOf(index) % K;
+                int split = coordinates[offset + currentDimension];
+                if (searchPoint[currentDimension] == split)
+                    stack[top++] = 2 * index + 1;
+                index = searchPoint[currentDimension] < split ? 2 * index + 1 : 2 * index + 2;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the minimum value in the FrozenKDTree
+     * @param dimension chosen dimension to examine
+     * @return the minimum value of chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is less than 0 or at least K
+     */
+    public int findMin(int dimension) throws InvalidSearchException {
+        checkSearchDimension(dimension);
+        return mins[dimension];
+    }
+
+    /**
+     * Find the maximum value in the FrozenKDTree
+     * @param dimension chosen dimension to examine
+     * @return the maximum value of chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is less than 0 or at least K
+     */
+    public int findMax(int dimension) throws InvalidSearchException {
+        checkSearchDimension(dimension);
+        return maxs[dimension];
+    }
+
+    /**
+     * Find the point nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @return the point with the smallest Euclidean distance to the query
+     * @throws InvalidSearchException if the tree is empty or the query does not match the dimensions of the tree
+     */
+    public int[] nearest(int... searchPoint) throws InvalidSearchException {
+        return kNearest(searchPoint, 1).get(0);
+    }
+
+    /**
+     * Find the k points nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @param k number of neighbours to find
+     * @return up to k points ordered from nearest to farthest
+     * @throws InvalidSearchException if the tree is empty, k is less than 1,
+     *                                or the query does not match the dimensions of the tree
+     */
+    public ArrayList<int[]> kNearest(int[] searchPoint, int k) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        checkDimensions(searchPoint);
+        if (k < 1)
+            throw new InvalidSearchException("Queried neighbour count of " + k + " must be at least 1");
+
+        SlotNeighborHeap candidates = new SlotNeighborHeap(Math.min(k, size));
+        nearest(0, 0, searchPoint, candidates);
+
+        ArrayList<int[]> points = new ArrayList<>(candidates.size());
+        for (int index : candidates.drainSorted())
+            points.add(pointAt(index));
+        return points;
+    }
+
+    /**
+     * Helper method to search a subtree for nearest neighbours, visiting the side
+     * of the query first and the other side only if it may hold a closer point
+     * @param index breadth-first index of the subtree
+     * @param depth depth of the subtree
+     * @param searchPoint coordinates of the query point
+     * @param candidates candidates found so far
+     */
+    private void nearest(int index, int depth, int[] searchPoint, SlotNeighborHeap candidates) {
+        if (index >= size)
+            return;
+
+        int offset = index * K;
+        double distance = 0;
+        for (int d = 0; d < K; d++) {
+            double diff = (double) coordinates[offset + d] - searchPoint[d];
+            distance += diff * diff;
+        }
+        candidates.offer(index, distance);
+
+        int currentDimension = depth % K;
+        double planeDistance = (double) searchPoint[currentDimension] - coordinates[offset + currentDimension];
+        boolean leftFirst = planeDistance < 0;
+
+        nearest(leftFirst ? 2 * index + 1 : 2 * index + 2, depth + 1, searchPoint, candidates);
+        if (planeDistance * planeDistance < candidates.worstDistance())
+            nearest(leftFirst ? 2 * index + 2 : 2 * index + 1, depth + 1, searchPoint, candidates);
+    }
+
+    /**
+     * Find the height of the FrozenKDTree, which is complete and thus as low as possible
+     * @return the height of the FrozenKDTree
+     */
+    public int height() {
+        return size == 0 ? 0 : depthOf(size - 1) + 1;
+    }
+
+    /**
+     * Visit every point of the FrozenKDTree in breadth-first order
+     * @param visitor callback receiving a copy of each point
+     */
+    public void forEach(Consumer<int[]> visitor) {
+        for (int index = 0; index < size; index++)
+            visitor.accept(pointAt(index));
+    }
+
+    public int getK() { return K; }
+
+    public int getSize() { return size; }
+
+    private int[] pointAt(int index) {
+        return Arrays.copyOfRange(coordinates, index * K, index * K + K);
+    }
+
+    private void checkDimensions(int[] searchPoint) throws InvalidSearchException {
+        if (searchPoint.length != K)
+            throw new InvalidSearchException("Search node's dimensions of " + searchPoint.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+    }
+
+    private void checkSearchDimension(int dimension) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        if (dimension < 0 || dimension >= K)
+            throw new InvalidSearchException("Queried search dimension of " + dimension
+                    + " must be at least 0 and less than the KD-tree's dimension of " + K);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("Points in breadth-first order:");
+        forEach(point -> out.append(" ").append(Arrays.toString(point)));
+        return out.toString();
+    }
+}
@@ -1,27 +1,40 @@
 package kdtree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * <h1>Node for KDTree to store integers</h1>
  *
+ * <p>
+ *     Coordinates are stored in a primitive array so comparisons in the tree
+ *     never unbox. The {@link ArrayList} based accessors are kept as thin adapters.
+ * </p>
+ *
  * @author Don Robert Pornaras
  * @version 1.0
  * @since 2018-12-07
  */
 public class KDNode {
-    private ArrayList<Integer> coordinates;
+    private int[] point;
     private KDNode leftChild;
     private KDNode rightChild;
     private KDNode parent;
     private int depth; // count starting 0 from root
+    private int subtreeSize = 1; // nodes in the subtree rooted here, including this node and tombstones
+    private int liveCount = 1; // nodes in the subtree rooted here that are not deleted
+    private int[] bounds; // bounding box of the live points of the subtree, K minimums followed by K maximums
+    private boolean deleted; // tombstone left by KDTree.delete until the subtree is compacted
+    private int insertionIndex; // position in the insertion order of the owning tree
+    private KDNode frozenCopy; // copy of this subtree taken by the last snapshot, cleared when the subtree changes
 
     /**
      * Ctor given list of coordinates for a single node
      * @param coordinates the list of coordinates for this node
      */
     KDNode(ArrayList<Integer> coordinates) {
-        this.coordinates = coordinates;
+        this.point = toPoint(coordinates);
     }
 
     /**
@@ -30,27 +43,80 @@ public class KDNode {
      * @param depth depth of this node
      */
     KDNode(ArrayList<Integer> coordinates, int depth) {
-        this.coordinates = coordinates;
+        this.point = toPoint(coordinates);
         this.depth = depth;
     }
 
+    /**
+     * Ctor given primitive coordinates for a single node
+     * <b>NOTE:</b> the array is not copied, the node takes ownership of it
+     * @param point values of each coordinate of this node
+     */
+    KDNode(int... point) {
+        this.point = point;
+    }
+
     /**
      * Ctor generated from a given node
+     * <b>NOTE:</b> the coordinates and bounding box are copied, so updating either node leaves the other intact
      * @param otherNode a given node to generate a new node
      */
     KDNode(KDNode otherNode) {
-        this.coordinates = otherNode.coordinates;
+        this.point = otherNode.point.clone();
         this.leftChild = otherNode.leftChild;
         this.rightChild = otherNode.rightChild;
         this.parent = otherNode.parent;
         this.depth = otherNode.depth;
+        this.subtreeSize = otherNode.subtreeSize;
+        this.liveCount = otherNode.liveCount;
+        this.bounds = otherNode.bounds == null ? null : otherNode.bounds.clone();
+        this.deleted = otherNode.deleted;
+        this.insertionIndex = otherNode.insertionIndex;
     }
 
+    /**
+     * Copy of the coordinates of this node as a list
+     * <b>NOTE:</b> since coordinates are stored in a primitive array, this returns a new list on
+     * every call rather than the node's own list, so changing the list no longer moves the node.
+     * Use {@link #setCoordinates} to change coordinates, and prefer {@link #getCoordinate(int)} on hot paths
+     * @return the list of coordinates for this node
+     */
     public ArrayList<Integer> getCoordinates() {
+        ArrayList<Integer> coordinates = new ArrayList<>(point.length);
+        for (int value : point)
+            coordinates.add(value);
         return coordinates;
     }
     public void setCoordinates(ArrayList<Integer> coordinates) {
-        this.coordinates = coordinates;
+        this.point = toPoint(coordinates);
+        changed();
+    }
+
+    /**
+     * Coordinates of this node, for classes of this package
+     * <b>NOTE:</b> returns the node's own array, which must not be modified while the node is in a tree
+     * @return the coordinates of this node
+     */
+    int[] getPoint() {
+        return point;
+    }
+
+    /**
+     * Replace the coordinates of this node, for classes of this package
+     * <b>NOTE:</b> the node takes ownership of the array, and must not be linked into a tree while its coordinates change
+     * @param point the new coordinates
+     */
+    void setPoint(int[] point) {
+        this.point = point;
+        changed();
+    }
+
+    public int getCoordinate(int dimension) {
+        return point[dimension];
+    }
+
+    public int getDimensions() {
+        return point.length;
     }
 
     public KDNode getLeftChild() {
@@ -58,6 +124,7 @@ public class KDNode {
     }
     public void setLeftChild(KDNode leftChild) {
         this.leftChild = leftChild;
+        changed();
     }
 
     public KDNode getRightChild() {
@@ -65,6 +132,7 @@ public class KDNode {
     }
     public void setRightChild(KDNode rightChild) {
         this.rightChild = rightChild;
+        changed();
     }
 
     public int getDepth() {
@@ -72,13 +140,254 @@ public class KDNode {
     }
     public void setDepth(int depth) {
         this.depth = depth;
+        changed();
+    }
+
+    public int getSubtreeSize() {
+        return subtreeSize;
+    }
+    public void setSubtreeSize(int subtreeSize) {
+        this.subtreeSize = subtreeSize;
+        changed();
+    }
+
+    public int getLiveCount() {
+        return liveCount;
+    }
+    void setLiveCount(int liveCount) {
+        this.liveCount = liveCount;
+        changed();
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+    void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+        changed();
+    }
+
+    public int getInsertionIndex() {
+        return insertionIndex;
+    }
+    void setInsertionIndex(int insertionIndex) {
+        this.insertionIndex = insertionIndex;
+        changed();
+    }
+
+    /**
+     * Smallest coordinate of a dimension within the subtree rooted at this node
+     * @param dimension chosen dimension
+     * @return the minimum of the chosen dimension in this subtree
+     */
+    public int getMinBound(int dimension) {
+        return bounds[dimension];
+    }
+
+    /**
+     * Largest coordinate of a dimension within the subtree rooted at this node
+     * @param dimension chosen dimension
+     * @return the maximum of the chosen dimension in this subtree
+     */
+    public int getMaxBound(int dimension) {
+        return bounds[point.length + dimension];
+    }
+
+    /**
+     * Recompute the subtree size, live count and bounding box from this node and its children
+     */
+    void recomputeSummary() {
+        int K = point.length;
+        if (bounds == null || bounds.length != 2 * K)
+            bounds = new int[2 * K];
+
+        if (deleted) {
+            Arrays.fill(bounds, 0, K, Integer.MAX_VALUE);
+            Arrays.fill(bounds, K, 2 * K, Integer.MIN_VALUE);
+        } else {
+            System.arraycopy(point, 0, bounds, 0, K);
+            System.arraycopy(point, 0, bounds, K, K);
+        }
+
+        subtreeSize = 1;
+        liveCount = deleted ? 0 : 1;
+        includeChild(leftChild);
+        includeChild(rightChild);
+        changed();
+    }
+
+    private void includeChild(KDNode child) {
+        if (child == null)
+            return;
+
+        subtreeSize += child.subtreeSize;
+        liveCount += child.liveCount;
+        if (child.liveCount > 0)
+            includeBounds(child);
+    }
+
+    /**
+     * Update the summary of the subtree for a live node just inserted below this one
+     * @param inserted the new leaf of the subtree
+     */
+    void includeInserted(KDNode inserted) {
+        subtreeSize++;
+        liveCount++;
+        includeBounds(inserted.point);
+        changed();
+    }
+
+    /**
+     * Grow the bounding box of the subtree to cover a point
+     * @param other point now inside the subtree
+     */
+    void includeBounds(int[] other) {
+        int K = point.length;
+        for (int i = 0; i < K; i++) {
+            if (other[i] < bounds[i])
+                bounds[i] = other[i];
+            if (other[i] > bounds[K + i])
+                bounds[K + i] = other[i];
+        }
+        changed();
+    }
+
+    /**
+     * Grow the bounding box of the subtree to cover a child's subtree
+     * @param child child node whose bounding box is already up to date
+     */
+    void includeBounds(KDNode child) {
+        int K = point.length;
+        for (int i = 0; i < K; i++) {
+            if (child.bounds[i] < bounds[i])
+                bounds[i] = child.bounds[i];
+            if (child.bounds[K + i] > bounds[K + i])
+                bounds[K + i] = child.bounds[K + i];
+        }
+        changed();
+    }
+
+    /**
+     * Check whether the bounding box of the subtree lies inside a box
+     * @param lowerCorner lower corner of the box (inclusive)
+     * @param upperCorner upper corner of the box (inclusive)
+     * @return true if every point of the subtree is inside the box
+     */
+    boolean boundsInside(int[] lowerCorner, int[] upperCorner) {
+        int K = point.length;
+        for (int i = 0; i < K; i++) {
+            if (bounds[i] < lowerCorner[i] || bounds[K + i] > upperCorner[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check whether the bounding box of the subtree overlaps a box
+     * @param lowerCorner lower corner of the box (inclusive)
+     * @param upperCorner upper corner of the box (inclusive)
+     * @return true if the subtree may hold a point inside the box
+     */
+    boolean boundsIntersect(int[] lowerCorner, int[] upperCorner) {
+        int K = point.length;
+        for (int i = 0; i < K; i++) {
+            if (bounds[K + i] < lowerCorner[i] || bounds[i] > upperCorner[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Squared distance from a point to the bounding box of the subtree
+     * @param other query point
+     * @return lower bound on the squared distance from the query to any point of the subtree
+     */
+    double boundsDistance(int[] other) {
+        int K = point.length;
+        double sum = 0;
+        for (int i = 0; i < K; i++) {
+            double diff = 0;
+            if (other[i] < bounds[i])
+                diff = (double) bounds[i] - other[i];
+            else if (other[i] > bounds[K + i])
+                diff = (double) other[i] - bounds[K + i];
+            sum += diff * diff;
+        }
+        return sum;
     }
 
     public KDNode getParent() { return parent; }
     public void setParent(KDNode parent) { this.parent = parent; }
 
+    /**
+     * Drop the copies taken by the last snapshot of this node and of its ancestors
+     * <b>NOTE:</b> stops at the first node without a copy, since its ancestors have none either
+     */
+    private void changed() {
+        for (KDNode current = this; current != null && current.frozenCopy != null; current = current.parent)
+            current.frozenCopy = null;
+    }
+
+    /**
+     * Copy of a subtree that later changes to the subtree do not affect
+     * <p>
+     *     Each node remembers the copy taken of it, and any change to a node drops the copies of
+     *     the node and of its ancestors. Copying the subtree again therefore only copies the nodes
+     *     changed since, and shares the copies of every unchanged subtree.
+     * </p>
+     * <b>NOTE:</b> the copies have no parent links and must never be changed
+     * @param top root of the subtree to copy, may be null
+     * @return the copy of the subtree, null if top is null
+     */
+    static KDNode freeze(KDNode top) {
+        if (top == null)
+            return null;
+
+        // a node stays on the stack until both of its children have copies
+        KDNode[] stack = new KDNode[64];
+        stack[0] = top;
+        int size = 1;
+        while (size > 0) {
+            KDNode current = stack[size - 1];
+            if (current.frozenCopy != null) {
+                size--;
+                continue;
+            }
+
+            if (size + 2 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            int pending = size;
+            if (current.leftChild != null && current.leftChild.frozenCopy == null)
+                stack[size++] = current.leftChild;
+            if (current.rightChild != null && current.rightChild.frozenCopy == null)
+                stack[size++] = current.rightChild;
+            if (size > pending)
+                continue;
+
+            KDNode copy = new KDNode(current);
+            copy.leftChild = current.leftChild == null ? null : current.leftChild.frozenCopy;
+            copy.rightChild = current.rightChild == null ? null : current.rightChild.frozenCopy;
+            copy.parent = null;
+            current.frozenCopy = copy;
+            size--;
+        }
+        return top.frozenCopy;
+    }
+
+    /**
+     * Convert a list of coordinates into a primitive point
+     * @param coordinates list of coordinates
+     * @return the coordinates as a primitive array
+     */
+    static int[] toPoint(List<Integer> coordinates) {
+        int[] point = new int[coordinates.size()];
+        for (int i = 0; i < point.length; i++)
+            point[i] = coordinates.get(i);
+        return point;
+    }
+
     @Override
     public String toString() {
-        return "Coordinates are: " + coordinates + " and Depth is: " + Integer.toString(depth);
+        return "Coordinates are: " + Arrays.toString(point) + " and Depth is: " + Integer.toString(depth);
     }
 }
@@ -1,6 +1,14 @@
 package kdtree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 /**
  * <h1>KD-Tree Implementation</h1>
@@ -11,17 +19,28 @@ import java.util.ArrayList;
  *      drawing only supported for 2 dimensions.
  * </p>
  * <b>NOTE:</b> Duplicate nodes are discarded insertion.
+ * Nodes tied with a split coordinate go to the right subtree.
+ * Deleted nodes are left as tombstones until their subtree is compacted.
  *
  * @author Don Robert Pornaras
  * @version 1.0
  * @since 2018-12-07
  */
-public class KDTree {
+public class KDTree implements Iterable<KDNode> {
     private KDNode root;
     private final int K; // number of dimensions
     private int size;
     private ArrayList<KDNode> insertionOrder;
 
+    private double balanceFactor; // alpha of scapegoat rebalancing, 0 when disabled
+    private long rebuildCount;
+    private long rebuildWork; // nodes relinked by all partial rebuilds
+    private long modificationCount; // changes whenever the set of nodes or the shape of the tree changes
+
+    private static final int MIN_COMPACTION_SIZE = 64;
+    private double compactionThreshold = 0.25; // fraction of tombstones that triggers a subtree rebuild
+    private int deletedInInsertionOrder; // tombstones still listed in insertionOrder
+
     /**
      * Ctor only for defining dimensions of KDTree
      * @param K dimensions of KDTree
@@ -39,6 +58,23 @@ public class KDTree {
         insertionOrder = new ArrayList<>();
     }
 
+    /**
+     * Ctor for a KDTree that keeps its height bounded on insertion
+     *
+     * <p>
+     *     After an insertion deeper than log(n) / log(1 / balanceFactor), the smallest
+     *     subtree above the new node that is taller than that bound for its own size is
+     *     rebuilt around its medians, in the style of a scapegoat tree.
+     * </p>
+     * @param K dimensions of KDTree
+     * @param balanceFactor fraction of a subtree one child may hold, between 0.5 and 1 (exclusive)
+     * @throws InvalidInitializationException thrown when dimensions are less than 1 or the balance factor is out of range
+     */
+    public KDTree(int K, double balanceFactor) throws InvalidInitializationException {
+        this(K);
+        setBalanceFactor(balanceFactor);
+    }
+
     /**
      * Ctor for single root node
      * <b>NOTE:</b> root node decides dimension of the KDTree
@@ -46,21 +82,25 @@ public class KDTree {
      * @throws InvalidInitializationException thrown when dimensions are less than 1
      */
     public KDTree(KDNode root) throws InvalidInitializationException {
-        if (root.getCoordinates().size() < 1)
+        if (root.getDimensions() < 1)
             throw new InvalidInitializationException("Cannot initialize tree with root dimensions = "
-                    + root.getCoordinates().size() + "."
+                    + root.getDimensions() + "."
                     + " Please initialize with node of at least 1 dimension.");
 
         this.root = root;
-        K = root.getCoordinates().size();
+        K = root.getDimensions();
         size = 1;
+        root.setDepth(0);
+        root.setDeleted(false);
+        root.setInsertionIndex(0);
+        root.recomputeSummary();
 
         insertionOrder = new ArrayList<>();
         insertionOrder.add(root);
     }
 
     /**
-     * Ctor for list of nodes to be inserted into tree in order
+     * Ctor for list of nodes, built as a balanced tree with {@link #bulkLoad}
      * <b>NOTE:</b> first node decides dimension of the KDTree
      * @param nodes list of nodes to input into the tree
      * @throws InvalidInitializationException thrown when dimensions are less than 1
@@ -71,15 +111,14 @@ public class KDTree {
             throw new NodeInsertionException("Failed attempt to insert " + nodes.size() + " nodes."
                     + " Must insert at least one node.");
 
+        K = nodes.get(0).getDimensions();
         insertionOrder = new ArrayList<>();
 
         try {
-            insert(nodes);
+            bulkLoad(nodes);
         } catch (NodeInsertionException x) {
             x.printStackTrace();
         }
-
-        K = nodes.get(0).getCoordinates().size();
     }
 
     /**
@@ -99,6 +138,18 @@ public class KDTree {
         return true;
     }
 
+    /**
+     * Insert a single point into the KDTree without boxing its coordinates
+     * <b>NOTE:</b> the coordinates are copied, so the caller may reuse its array
+     * @param coordinates values of each coordinate of the point to insert
+     * @return true on success
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     * @throws NodeInsertionException thrown when point does not match dimensions of KDTree
+     */
+    public boolean insert(int... coordinates) throws InvalidInitializationException, NodeInsertionException {
+        return insert(new KDNode(coordinates.clone()));
+    }
+
     /**
      * Insert a single node into the KDTree
      * @param inNode node to insert
@@ -107,52 +158,405 @@ public class KDTree {
      * @throws NodeInsertionException thrown when node does not match dimensions of KDTree
      */
     public boolean insert(KDNode inNode) throws InvalidInitializationException, NodeInsertionException {
-        if (inNode.getCoordinates().size() != K)
-            throw new NodeInsertionException("Cannot insert node of " + inNode.getCoordinates().size() + " dimensions"
+        if (inNode.getDimensions() != K)
+            throw new NodeInsertionException("Cannot insert node of " + inNode.getDimensions() + " dimensions"
                     + " since it does not match the dimensions of the KD-tree!"
                     + "\nPlease insert node of exactly " + K + " dimensions.");
 
+        return insertNode(inNode);
+    }
+
+    /**
+     * Helper method to insert a node whose dimensions are already checked
+     * @param inNode node to insert
+     * @return true on success, false if a live node with the same coordinates exists
+     */
+    private boolean insertNode(KDNode inNode) {
+        boolean listed = inNode.isDeleted() && isListed(inNode); // a tombstone inserted again keeps its place
+        inNode.setLeftChild(null);
+        inNode.setRightChild(null);
+        inNode.setDeleted(false);
+
         if (root == null) {
-            KDTree newTree = new KDTree(inNode);
-            root = newTree.root;
+            root = inNode;
+            root.setParent(null);
             root.setDepth(0);
+            root.recomputeSummary();
             size = 1;
+            modificationCount++;
 
-            insertionOrder.add(inNode);
+            addToInsertionOrder(inNode, listed);
             return true;
         }
 
-        return insert(root, inNode, 0) != null;
+        int depth = 0;
+        KDNode current = root;
+        while (true) {
+            if (!current.isDeleted() && Arrays.equals(current.getPoint(), inNode.getPoint()))
+                return false;
+
+            int currentDimension = depth % K;
+            KDNode child = inNode.getCoordinate(currentDimension) < current.getCoordinate(currentDimension)
+                    ? current.getLeftChild() : current.getRightChild();
+
+            if (child == null)
+                break;
+            current = child;
+            depth++;
+        }
+
+        inNode.setDepth(depth + 1);
+        inNode.setParent(current);
+        inNode.recomputeSummary();
+        if (inNode.getCoordinate(depth % K) < current.getCoordinate(depth % K))
+            current.setLeftChild(inNode);
+        else
+            current.setRightChild(inNode);
+
+        for (KDNode ancestor = current; ancestor != null; ancestor = ancestor.getParent())
+            ancestor.includeInserted(inNode);
+
+        size++;
+        modificationCount++;
+        addToInsertionOrder(inNode, listed);
+
+        if (balanceFactor > 0 && inNode.getDepth() > maxBalancedDepth())
+            rebuildScapegoat(inNode);
+
+        return true;
+    }
+
+    /**
+     * Append a newly inserted node to the insertion order
+     * @param inNode the inserted node
+     * @param listed true if the node is a revived tombstone still listed at its old place
+     */
+    private void addToInsertionOrder(KDNode inNode, boolean listed) {
+        if (listed) {
+            deletedInInsertionOrder--;
+            return;
+        }
+        inNode.setInsertionIndex(insertionOrder.size());
+        insertionOrder.add(inNode);
+    }
+
+    /**
+     * Deepest depth allowed for the current size before a rebuild is triggered
+     * @return floor of log(size) / log(1 / balanceFactor)
+     */
+    private int maxBalancedDepth() {
+        return maxBalancedDepth(root.getSubtreeSize());
+    }
+
+    private int maxBalancedDepth(int nodeCount) {
+        return (int) (Math.log(nodeCount) / Math.log(1.0 / balanceFactor));
+    }
+
+    /**
+     * Rebuild the smallest subtree above a newly inserted node that is too tall for its size
+     * @param inserted the node that went too deep
+     */
+    private void rebuildScapegoat(KDNode inserted) {
+        int height = 0;
+        for (KDNode ancestor = inserted.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            height++;
+            if (height > maxBalancedDepth(ancestor.getSubtreeSize())) {
+                rebuild(ancestor);
+                return;
+            }
+        }
     }
 
     /**
-     * Helper method to insert single node into the KDTree
-     * @param current node currently examined
-     * @param inNode node to be inserted
-     * @param depth current depth
-     * @return root of new tree with inNode inserted on success, root of same tree as input on failure
+     * Rebuild a subtree around its medians and relink it in place, dropping its tombstones
+     * @param top root of the subtree to rebuild
      */
-    private KDNode insert(KDNode current, KDNode inNode, int depth) {
-        if (current == null) {
-            inNode.setDepth(depth);
-            size++;
-            insertionOrder.add(inNode);
-            return inNode;
+    private void rebuild(KDNode top) {
+        KDNode parent = top.getParent();
+        boolean wasLeftChild = parent != null && parent.getLeftChild() == top;
+
+        // breadth-first gather, using the array itself as the queue
+        KDNode[] nodes = new KDNode[top.getSubtreeSize()];
+        int count = 0;
+        nodes[count++] = top;
+        for (int i = 0; i < count; i++) {
+            if (nodes[i].getLeftChild() != null)
+                nodes[count++] = nodes[i].getLeftChild();
+            if (nodes[i].getRightChild() != null)
+                nodes[count++] = nodes[i].getRightChild();
         }
 
-        int currentDimension = depth % K;
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            if (nodes[i].isDeleted()) {
+                nodes[i].setParent(null);
+                nodes[i].setLeftChild(null);
+                nodes[i].setRightChild(null);
+            } else {
+                nodes[live++] = nodes[i];
+            }
+        }
+
+        KDNode rebuilt = KDTreeBuilder.build(nodes, 0, live, top.getDepth(), K);
+        if (rebuilt != null)
+            rebuilt.setParent(parent);
+        if (parent == null)
+            root = rebuilt;
+        else if (wasLeftChild)
+            parent.setLeftChild(rebuilt);
+        else
+            parent.setRightChild(rebuilt);
+
+        for (KDNode ancestor = parent; ancestor != null; ancestor = ancestor.getParent())
+            ancestor.setSubtreeSize(ancestor.getSubtreeSize() - (count - live));
+
+        rebuildCount++;
+        rebuildWork += count;
+    }
+
+    /**
+     * Delete the node with matching coordinates
+     *
+     * <p>
+     *     The node is marked as a tombstone and the subtree sizes and bounding boxes above it
+     *     are updated. Once the tombstones in a subtree pass the compaction threshold,
+     *     the largest such subtree above the node is rebuilt without them.
+     * </p>
+     * @param deletePoint coordinates of the node to delete
+     * @return true if a node was deleted, false if no node has these coordinates
+     * @throws InvalidSearchException if the point does not match the dimensions of the tree
+     */
+    public boolean delete(int... deletePoint) throws InvalidSearchException {
+        if (deletePoint.length != K)
+            throw new InvalidSearchException("Delete node's dimensions of " + deletePoint.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+
+        KDNode target = findNode(deletePoint);
+        if (target == null)
+            return false;
+
+        target.setDeleted(true);
+        for (KDNode ancestor = target; ancestor != null; ancestor = ancestor.getParent())
+            ancestor.recomputeSummary();
+
+        size--;
+        modificationCount++;
+        deletedInInsertionOrder++;
+        if (insertionOrder.size() < MIN_COMPACTION_SIZE
+                || deletedInInsertionOrder > compactionThreshold * insertionOrder.size())
+            compactInsertionOrder();
+
+        compactAbove(target);
+        return true;
+    }
 
-        if (inNode.getCoordinates().get(currentDimension) < current.getCoordinates().get(currentDimension)) {
-            current.setLeftChild(insert(current.getLeftChild(), inNode, depth + 1));
-            current.getLeftChild().setParent(current);
-        } else  if (inNode.getCoordinates().get(currentDimension) > current.getCoordinates().get(currentDimension)) {
-            current.setRightChild(insert(current.getRightChild(), inNode, depth + 1));
-            current.getRightChild().setParent(current);
-        } else {
-            return null;
+    /**
+     * Rebuild the largest subtree above a new tombstone whose tombstones pass the compaction threshold
+     * @param tombstone the node just marked as deleted
+     */
+    private void compactAbove(KDNode tombstone) {
+        KDNode compactionRoot = null;
+        for (KDNode ancestor = tombstone; ancestor != null; ancestor = ancestor.getParent()) {
+            if (ancestor.getSubtreeSize() >= MIN_COMPACTION_SIZE && tombstoneFraction(ancestor) > compactionThreshold)
+                compactionRoot = ancestor;
         }
+        if (compactionRoot != null)
+            rebuild(compactionRoot);
+    }
 
-        return current;
+    /**
+     * Drop the deleted nodes from the insertion order and renumber the insertion indices
+     */
+    private void compactInsertionOrder() {
+        if (deletedInInsertionOrder == 0)
+            return;
+
+        insertionOrder.removeIf(KDNode::isDeleted);
+        for (int i = 0; i < insertionOrder.size(); i++)
+            insertionOrder.get(i).setInsertionIndex(i);
+        deletedInInsertionOrder = 0;
+    }
+
+    /**
+     * Move a node to new coordinates
+     * <p>
+     *     The node itself is moved, so it keeps its identity and its place in the insertion order.
+     *     A deleted copy of it is left at its old place to keep the search paths through it intact.
+     * </p>
+     * @param oldPoint coordinates of the node to move
+     * @param newPoint coordinates to move the node to
+     * @return true if the node was moved, false if no node has the old coordinates
+     *         or another node already has the new coordinates
+     * @throws InvalidSearchException if either point does not match the dimensions of the tree
+     */
+    public boolean move(int[] oldPoint, int[] newPoint) throws InvalidSearchException {
+        if (newPoint.length != K)
+            throw new InvalidSearchException("Move node's dimensions of " + newPoint.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+        if (Arrays.equals(oldPoint, newPoint))
+            return find(oldPoint);
+        if (oldPoint.length != K)
+            throw new InvalidSearchException("Move node's dimensions of " + oldPoint.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+
+        KDNode target = findNode(oldPoint);
+        if (target == null || findNode(newPoint) != null)
+            return false;
+
+        KDNode tombstone = new KDNode(target);
+        tombstone.setDeleted(true);
+        KDNode parent = target.getParent();
+        if (parent == null)
+            root = tombstone;
+        else if (parent.getLeftChild() == target)
+            parent.setLeftChild(tombstone);
+        else
+            parent.setRightChild(tombstone);
+        if (tombstone.getLeftChild() != null)
+            tombstone.getLeftChild().setParent(tombstone);
+        if (tombstone.getRightChild() != null)
+            tombstone.getRightChild().setParent(tombstone);
+        for (KDNode ancestor = tombstone; ancestor != null; ancestor = ancestor.getParent())
+            ancestor.recomputeSummary();
+        size--;
+        compactAbove(tombstone);
+
+        // the node is still listed at its insertion index, and is inserted again like a deleted node that keeps its place
+        target.setPoint(Arrays.copyOf(newPoint, K));
+        target.setParent(null);
+        target.setDeleted(true);
+        deletedInInsertionOrder++;
+        return insertNode(target);
+    }
+
+    /**
+     * Rebuild the whole tree without its tombstones
+     */
+    public void compact() {
+        if (root != null && root.getLiveCount() < root.getSubtreeSize()) {
+            rebuild(root);
+            modificationCount++;
+        }
+    }
+
+    private static double tombstoneFraction(KDNode current) {
+        return (double) (current.getSubtreeSize() - current.getLiveCount()) / current.getSubtreeSize();
+    }
+
+    /**
+     * Bulk load a list of nodes into the KDTree as a balanced tree
+     *
+     * <p>
+     *     Unlike {@link #insert(ArrayList)}, split points are chosen as the median of each
+     *     dimension rather than by insertion order, so sorted or clustered input still gives
+     *     a tree of height about log2(n). Nodes already in the tree are rebuilt together with
+     *     the new nodes, and large subtrees are built in parallel.
+     * </p>
+     * <b>NOTE:</b> Duplicate nodes are discarded, keeping the earliest one.
+     *
+     * @param nodes the list of nodes to insert
+     * @return true if all nodes were inserted, false if any duplicates were discarded
+     * @throws NodeInsertionException if any node does not match dimensions of KDTree
+     */
+    public boolean bulkLoad(ArrayList<KDNode> nodes) throws NodeInsertionException {
+        for (KDNode n : nodes) {
+            if (n.getDimensions() != K)
+                throw new NodeInsertionException("Cannot insert node of " + n.getDimensions() + " dimensions"
+                        + " since it does not match the dimensions of the KD-tree!"
+                        + "\nPlease insert node of exactly " + K + " dimensions.");
+        }
+
+        compactInsertionOrder(); // drop deleted nodes before rebuilding from the list
+        KDNode[] all = new KDNode[insertionOrder.size() + nodes.size()];
+        for (int i = 0; i < insertionOrder.size(); i++)
+            all[i] = insertionOrder.get(i);
+        for (int i = 0; i < nodes.size(); i++) {
+            all[insertionOrder.size() + i] = nodes.get(i);
+            nodes.get(i).setDeleted(false);
+        }
+
+        // stable sort keeps the earliest of each run of duplicates first
+        Arrays.parallelSort(all, (a, b) -> Arrays.compare(a.getPoint(), b.getPoint()));
+        Set<KDNode> discarded = Collections.newSetFromMap(new IdentityHashMap<>());
+        int unique = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (unique > 0 && Arrays.equals(all[unique - 1].getPoint(), all[i].getPoint())) {
+                if (all[i] != all[unique - 1])
+                    discarded.add(all[i]);
+                continue;
+            }
+            all[unique++] = all[i];
+        }
+
+        root = KDTreeBuilder.build(all, 0, unique, 0, K);
+        if (root != null)
+            root.setParent(null);
+
+        // a node passed twice, or already in the tree, is only listed once
+        int listed = insertionOrder.size();
+        for (KDNode n : nodes) {
+            if (!discarded.contains(n) && !isListed(n)) {
+                n.setInsertionIndex(insertionOrder.size());
+                insertionOrder.add(n);
+            }
+        }
+
+        size = unique;
+        modificationCount++;
+        return insertionOrder.size() - listed == nodes.size();
+    }
+
+    /**
+     * Check whether a node is in the insertion order, whose indices must be up to date
+     * @param node node to look up
+     * @return true if the node is listed at its own insertion index
+     */
+    private boolean isListed(KDNode node) {
+        int index = node.getInsertionIndex();
+        return index >= 0 && index < insertionOrder.size() && insertionOrder.get(index) == node;
+    }
+
+    /**
+     * Make an immutable copy of the live nodes, stored as a complete tree in one primitive array
+     * <b>NOTE:</b> later changes to this tree do not affect the copy
+     * @return the frozen copy
+     */
+    public FrozenKDTree freeze() {
+        return new FrozenKDTree(this);
+    }
+
+    /**
+     * Copy of this tree that later changes to it do not affect, for readers running alongside a writer
+     * <p>
+     *     Only the nodes changed since the last snapshot are copied, the rest is shared with it,
+     *     see {@link KDNode#freeze}. Taking a snapshot after each change costs about the length
+     *     of the changed paths, plus the size of any subtree rebuilt by the change.
+     * </p>
+     * <b>NOTE:</b> the snapshot must never be changed, and has no insertion order
+     * @return the snapshot
+     */
+    KDTree snapshot() {
+        return new KDTree(this);
+    }
+
+    /**
+     * Ctor for a snapshot of another tree
+     * @param source the tree to copy
+     */
+    private KDTree(KDTree source) {
+        root = KDNode.freeze(source.root);
+        K = source.K;
+        size = source.size;
+        insertionOrder = new ArrayList<>();
+
+        balanceFactor = source.balanceFactor;
+        rebuildCount = source.rebuildCount;
+        rebuildWork = source.rebuildWork;
+        modificationCount = source.modificationCount;
+        compactionThreshold = source.compactionThreshold;
     }
 
     /**
@@ -161,116 +565,394 @@ public class KDTree {
      * @return true if node is found with coordinates matching input coordinates
      */
     public boolean find(ArrayList<Integer> searchNodeData) throws InvalidSearchException {
-        if (searchNodeData.size() != K) {
-            throw new InvalidSearchException("Search node's dimensions of " + searchNodeData.size()
+        return find(KDNode.toPoint(searchNodeData));
+    }
+
+    /**
+     * Find node with matching coordinates without boxing the query
+     * @param searchPoint coordinates to match in node to find
+     * @return true if node is found with coordinates matching input coordinates
+     * @throws InvalidSearchException if the query does not match the dimensions of the tree
+     */
+    public boolean find(int... searchPoint) throws InvalidSearchException {
+        if (searchPoint.length != K) {
+            throw new InvalidSearchException("Search node's dimensions of " + searchPoint.length
                     + " do not match dimensions of the tree!"
                     + " Dimension of tree is K = " + K);
         }
 
-        return find(root, searchNodeData, 0);
+        return findNode(searchPoint) != null;
     }
 
     /**
-     * Helper method to find a node in the KDTree
-     * @param current node currently examined
-     * @param searchNodeData coordinates to search for and match in the tree
-     * @param depth current depth
-     * @return true on sucess
+     * Find a batch of points at once
+     * <p>
+     *     Queries are searched in Morton order so consecutive searches share most of their
+     *     path through the tree, and large batches are split across all cores.
+     * </p>
+     * @param searchPoints coordinates of each point to find
+     * @return for each point, in the order given, true if a node with matching coordinates is found
+     * @throws InvalidSearchException if any point does not match the dimensions of the tree
      */
-    private boolean find(KDNode current, ArrayList<Integer> searchNodeData, int depth) {
-        if (current == null)
-            return false;
-        if (current.getCoordinates().equals(searchNodeData))
-            return true;
+    public boolean[] findAll(List<int[]> searchPoints) throws InvalidSearchException {
+        for (int[] searchPoint : searchPoints) {
+            if (searchPoint.length != K)
+                throw new InvalidSearchException("Search node's dimensions of " + searchPoint.length
+                        + " do not match dimensions of the tree!"
+                        + " Dimension of tree is K = " + K);
+        }
 
-        int currentDimension = depth % K;
+        return KDTreeBatchFinder.findAll(this, searchPoints.toArray(new int[0][]));
+    }
 
-        if (searchNodeData.get(currentDimension) < current.getCoordinates().get(currentDimension))
-            return find(current.getLeftChild(), searchNodeData, depth +1);
+    /**
+     * Helper method to find the live node with matching coordinates
+     * @param searchPoint coordinates to search for and match in the tree
+     * @return the matching node, null if there is none
+     */
+    KDNode findNode(int[] searchPoint) {
+        KDNode current = root;
+        int depth = 0;
+        while (current != null) {
+            if (!current.isDeleted() && Arrays.equals(current.getPoint(), searchPoint))
+                return current;
+
+            int currentDimension = depth % K;
+            if (searchPoint[currentDimension] < current.getCoordinate(currentDimension))
+                current = current.getLeftChild();
+            else
+                current = current.getRightChild();
+            depth++;
+        }
 
-        return find(current.getRightChild(), searchNodeData, depth +1);
+        return null;
     }
 
     /**
-     * Find the minimum value in the KDTree
-     * @param dimension chosen dimension to examine
-     * @return the minimum value of chosen dimension
-     * @throws InvalidSearchException if queried search dimension is less than 0 or greater than K
+     * Find the node nearest to given coordinates
+     * @param searchNodeData coordinates of the query point
+     * @return the node with the smallest Euclidean distance to the query
+     * @throws InvalidSearchException if the tree is empty or the query does not match the dimensions of the tree
      */
-    public int findMin(int dimension) throws InvalidSearchException {
+    public KDNode nearest(ArrayList<Integer> searchNodeData) throws InvalidSearchException {
+        return nearest(KDNode.toPoint(searchNodeData));
+    }
+
+    /**
+     * Find the node nearest to a point without boxing the query
+     * @param searchPoint coordinates of the query point
+     * @return the node with the smallest Euclidean distance to the query
+     * @throws InvalidSearchException if the tree is empty or the query does not match the dimensions of the tree
+     */
+    public KDNode nearest(int... searchPoint) throws InvalidSearchException {
+        return kNearest(searchPoint, 1).get(0);
+    }
+
+    /**
+     * Find the k nodes nearest to a point
+     * @param searchPoint coordinates of the query point
+     * @param k number of neighbours to find
+     * @return up to k nodes ordered from nearest to farthest
+     * @throws InvalidSearchException if the tree is empty, k is less than 1,
+     *                                or the query does not match the dimensions of the tree
+     */
+    public ArrayList<KDNode> kNearest(int[] searchPoint, int k) throws InvalidSearchException {
         if (size == 0)
             throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
-        if (dimension < 0 || dimension >= K )
-            throw new InvalidSearchException("Queried search dimension of " + dimension
-                                        + " must be at least 0 and less than the KD-tree's dimension of " + K);
+        if (searchPoint.length != K)
+            throw new InvalidSearchException("Search node's dimensions of " + searchPoint.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+        if (k < 1)
+            throw new InvalidSearchException("Queried neighbour count of " + k + " must be at least 1");
 
-        return findMin(root, dimension, 0);
+        NeighborHeap heap = new NeighborHeap(Math.min(k, size));
+        nearest(root, K, searchPoint, heap, new SearchStack());
+        return heap.drainSorted();
     }
 
     /**
-     * Helper method to find minimum value in the KDTree
-     * @param current node currently examined
-     * @param dimension chosen dimension to examine
-     * @param depth current depth
-     * @return the minimum value of chosen dimension
+     * Find the k nodes nearest to each point of a batch
+     * <p>
+     *     The batch is split across all cores. Results are written k slots per query, so the
+     *     neighbours of query q are at positions q * k through q * k + k - 1, nearest first.
+     *     Each neighbour is reported by its index in {@link #getInsertionOrder()}; slots left
+     *     over when the tree holds fewer than k nodes get index -1 and an infinite distance.
+     * </p>
+     * @param searchPoints coordinates of each query point
+     * @param k number of neighbours per query
+     * @param outIndices receives the insertion order index of each neighbour
+     * @param outDistances receives the Euclidean distance of each neighbour
+     * @throws InvalidSearchException if the tree is empty, k is less than 1, an output array is too small,
+     *                                or any query does not match the dimensions of the tree
+     */
+    public void kNearestAll(int[][] searchPoints, int k, int[] outIndices, double[] outDistances)
+            throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        if (k < 1)
+            throw new InvalidSearchException("Queried neighbour count of " + k + " must be at least 1");
+        long slots = (long) searchPoints.length * k;
+        if (slots > outIndices.length || slots > outDistances.length)
+            throw new InvalidSearchException("Output arrays of " + outIndices.length + " and " + outDistances.length
+                    + " slots cannot hold " + slots + " results");
+        for (int[] searchPoint : searchPoints) {
+            if (searchPoint.length != K)
+                throw new InvalidSearchException("Search node's dimensions of " + searchPoint.length
+                        + " do not match dimensions of the tree!"
+                        + " Dimension of tree is K = " + K);
+        }
+
+        KDTreeBatchNearest.kNearestAll(root, size, K, searchPoints, k, outIndices, outDistances);
+    }
+
+    /**
+     * Explicit stack of nodes and their depths for {@link #nearest(KDNode, int, int[], NeighborHeap, SearchStack)},
+     * reused from one search to the next so searching allocates nothing once it is large enough
+     */
+    static final class SearchStack {
+        KDNode[] nodes = new KDNode[64];
+        int[] depths = new int[64];
+    }
+
+    /**
+     * Helper method to collect nearest neighbours without recursion, visiting the child on the query's
+     * side of the split first and skipping any subtree whose bounding box is farther away than the
+     * current k-th candidate when it is reached
+     * @param root root of the tree to search
+     * @param K dimensions of the tree
+     * @param searchPoint coordinates of the query point
+     * @param heap candidates found so far
+     * @param stack traversal stack, grown as needed and left empty
+     */
+    static void nearest(KDNode root, int K, int[] searchPoint, NeighborHeap heap, SearchStack stack) {
+        KDNode[] nodes = stack.nodes;
+        int[] depths = stack.depths;
+        nodes[0] = root;
+        depths[0] = 0;
+        int top = 1;
+        while (top > 0) {
+            top--;
+            KDNode current = nodes[top];
+            int depth = depths[top];
+            nodes[top] = null;
+            if (current.getLiveCount() == 0 || current.boundsDistance(searchPoint) >= heap.worstDistance())
+                continue;
+
+            if (!current.isDeleted())
+                heap.offer(current, squaredDistance(current.getPoint(), searchPoint));
+
+            int currentDimension = depth % K;
+            boolean leftFirst = searchPoint[currentDimension] < current.getCoordinate(currentDimension);
+            KDNode nearSide = leftFirst ? current.getLeftChild() : current.getRightChild();
+            KDNode farSide = leftFirst ? current.getRightChild() : current.getLeftChild();
+
+            if (top + 2 > nodes.length) {
+                nodes = stack.nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+                depths = stack.depths = Arrays.copyOf(depths, 2 * depths.length);
+            }
+            // the near side is pushed last so it is searched first
+            if (farSide != null) {
+                nodes[top] = farSide;
+                depths[top++] = depth + 1;
+            }
+            if (nearSide != null) {
+                nodes[top] = nearSide;
+                depths[top++] = depth + 1;
+            }
+        }
+    }
+
+    /**
+     * Squared Euclidean distance between two points
+     * <b>NOTE:</b> differences are taken in double so coordinates spanning the full int range do not overflow
+     * @param a first point
+     * @param b second point
+     * @return the squared distance
+     */
+    static double squaredDistance(int[] a, int[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            double diff = (double) a[i] - b[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Find all nodes inside an axis-aligned box
+     * @param lowerCorner smallest coordinate of the box in each dimension (inclusive)
+     * @param upperCorner largest coordinate of the box in each dimension (inclusive)
+     * @return the nodes inside the box, in pre-order
+     * @throws InvalidSearchException if the corners do not match the dimensions of the tree
+     */
+    public ArrayList<KDNode> rangeQuery(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        checkRangeDimensions(lowerCorner, upperCorner);
+
+        ArrayList<KDNode> out = new ArrayList<>();
+        rangeQuery(lowerCorner, upperCorner, out);
+        return out;
+    }
+
+    /**
+     * Count the nodes inside an axis-aligned box without collecting them
+     * @param lowerCorner smallest coordinate of the box in each dimension (inclusive)
+     * @param upperCorner largest coordinate of the box in each dimension (inclusive)
+     * @return number of nodes inside the box
+     * @throws InvalidSearchException if the corners do not match the dimensions of the tree
+     */
+    public int rangeCount(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        checkRangeDimensions(lowerCorner, upperCorner);
+
+        return countInRange(lowerCorner, upperCorner);
+    }
+
+    /**
+     * Helper method to collect nodes inside a box in pre-order without recursion. Subtrees whose
+     * bounding box misses the box are skipped and subtrees whose bounding box lies inside it are reported whole.
+     * @param lowerCorner lower corner of the box
+     * @param upperCorner upper corner of the box
+     * @param out placeholder for nodes inside the box
+     */
+    private void rangeQuery(int[] lowerCorner, int[] upperCorner, ArrayList<KDNode> out) {
+        KDNode[] stack = new KDNode[64];
+        int top = 0;
+        if (root != null)
+            stack[top++] = root;
+        while (top > 0) {
+            KDNode current = stack[--top];
+            if (current.getLiveCount() == 0 || !current.boundsIntersect(lowerCorner, upperCorner))
+                continue;
+            if (current.boundsInside(lowerCorner, upperCorner)) {
+                collectSubtree(current, out);
+                continue;
+            }
+
+            if (!current.isDeleted() && boxContains(lowerCorner, upperCorner, current.getPoint(), current.getPoint()))
+                out.add(current);
+
+            if (top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            if (current.getRightChild() != null)
+                stack[top++] = current.getRightChild();
+            if (current.getLeftChild() != null)
+                stack[top++] = current.getLeftChild();
+        }
+    }
+
+    /**
+     * Helper method to count nodes inside a box without recursion, using live counts for bounding boxes inside the box
+     * @param lowerCorner lower corner of the box
+     * @param upperCorner upper corner of the box
+     * @return number of nodes inside the box
      */
-    private int findMin(KDNode current, int dimension, int depth) {
-        if (current == null)
-            return Integer.MAX_VALUE;
+    private int countInRange(int[] lowerCorner, int[] upperCorner) {
+        KDNode[] stack = new KDNode[64];
+        int top = 0;
+        if (root != null)
+            stack[top++] = root;
+
+        int count = 0;
+        while (top > 0) {
+            KDNode current = stack[--top];
+            if (current.getLiveCount() == 0 || !current.boundsIntersect(lowerCorner, upperCorner))
+                continue;
+            if (current.boundsInside(lowerCorner, upperCorner)) {
+                count += current.getLiveCount();
+                continue;
+            }
 
-        int currentDimension = depth % K;
+            if (!current.isDeleted() && boxContains(lowerCorner, upperCorner, current.getPoint(), current.getPoint()))
+                count++;
 
-        if (currentDimension == dimension) {
-            if (current.getLeftChild() == null)
-                return current.getCoordinates().get(dimension);
-            return Math.min(current.getCoordinates().get(dimension),
-                    findMin(current.getLeftChild(), dimension, depth +1));
+            if (top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            if (current.getRightChild() != null)
+                stack[top++] = current.getRightChild();
+            if (current.getLeftChild() != null)
+                stack[top++] = current.getLeftChild();
         }
+        return count;
+    }
+
+    /**
+     * Helper method to add every live node of a subtree in pre-order without testing it
+     * @param subtree root of the subtree
+     * @param out placeholder for the nodes of the subtree
+     */
+    private void collectSubtree(KDNode subtree, ArrayList<KDNode> out) {
+        KDNode[] stack = new KDNode[64];
+        int top = 0;
+        stack[top++] = subtree;
+        while (top > 0) {
+            KDNode current = stack[--top];
+            if (current.getLiveCount() == 0)
+                continue;
+
+            if (!current.isDeleted())
+                out.add(current);
+            if (top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            if (current.getRightChild() != null)
+                stack[top++] = current.getRightChild();
+            if (current.getLeftChild() != null)
+                stack[top++] = current.getLeftChild();
+        }
+    }
+
+    private void checkRangeDimensions(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        if (lowerCorner.length != K || upperCorner.length != K)
+            throw new InvalidSearchException("Search box dimensions of " + lowerCorner.length
+                    + " and " + upperCorner.length + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+    }
 
-        return Math.min(current.getCoordinates().get(dimension),
-                Math.min(findMin(current.getLeftChild(), dimension, depth +1),
-                findMin(current.getRightChild(), dimension, depth +1)));
+    /**
+     * Check whether a box contains another box
+     * @param lowerCorner lower corner of the outer box
+     * @param upperCorner upper corner of the outer box
+     * @param innerLower lower corner of the inner box
+     * @param innerUpper upper corner of the inner box
+     * @return true if the inner box lies entirely inside the outer box
+     */
+    static boolean boxContains(int[] lowerCorner, int[] upperCorner, int[] innerLower, int[] innerUpper) {
+        for (int i = 0; i < lowerCorner.length; i++) {
+            if (innerLower[i] < lowerCorner[i] || innerUpper[i] > upperCorner[i])
+                return false;
+        }
+        return true;
     }
 
     /**
-     * Find the maximum value in the KDTree
+     * Find the minimum value in the KDTree, read in O(1) from the bounding box of the root
      * @param dimension chosen dimension to examine
-     * @return the maximum value of chosen dimension
+     * @return the minimum value of chosen dimension
      * @throws InvalidSearchException if queried search dimension is less than 0 or greater than K
      */
-    public int findMax(int dimension) throws InvalidSearchException {
+    public int findMin(int dimension) throws InvalidSearchException {
         if (size == 0)
             throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
-        if (dimension < 0 || dimension > K )
+        if (dimension < 0 || dimension >= K )
             throw new InvalidSearchException("Queried search dimension of " + dimension
-                    + " must be at least 0 and less than the KD-tree's dimension of " + K);
+                                        + " must be at least 0 and less than the KD-tree's dimension of " + K);
 
-        return findMax(root, dimension, 0);
+        return root.getMinBound(dimension);
     }
 
     /**
-     * Helper method to find maximum value in the KDTree
-     * @param current node currently examined
+     * Find the maximum value in the KDTree, read in O(1) from the bounding box of the root
      * @param dimension chosen dimension to examine
-     * @param depth current depth
      * @return the maximum value of chosen dimension
+     * @throws InvalidSearchException if queried search dimension is less than 0 or greater than K
      */
-    private int findMax(KDNode current, int dimension, int depth) {
-        if (current == null)
-            return Integer.MIN_VALUE;
-
-        int currentDimension = depth % K;
-
-        if (currentDimension == dimension) {
-            if (current.getRightChild() == null)
-                return current.getCoordinates().get(dimension);
-            return Math.max(current.getCoordinates().get(dimension),
-                    findMax(current.getRightChild(), dimension, depth + 1));
-        }
+    public int findMax(int dimension) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        if (dimension < 0 || dimension >= K )
+            throw new InvalidSearchException("Queried search dimension of " + dimension
+                    + " must be at least 0 and less than the KD-tree's dimension of " + K);
 
-        return Math.max(current.getCoordinates().get(dimension),
-                Math.max(findMax(current.getLeftChild(), dimension, depth + 1),
-                        findMax(current.getRightChild(), dimension, depth + 1)));
+        return root.getMaxBound(dimension);
     }
 
     /**
@@ -278,19 +960,35 @@ public class KDTree {
      * @return the height of the KDTree
      */
     public int height() {
-        return height(root);
-    }
+        KDNode[] stack = new KDNode[64];
+        int[] levels = new int[64]; // level of each stacked node, 1 for the root
+        int top = 0;
+        if (root != null) {
+            stack[0] = root;
+            levels[top++] = 1;
+        }
 
-    /**
-     * Helper method to find the height of the KDTree
-     * @param current node currently examined
-     * @return the height of the KDTree
-     */
-    private int height(KDNode current) {
-        if (current == null)
-            return 0;
+        int height = 0;
+        while (top > 0) {
+            top--;
+            KDNode current = stack[top];
+            int level = levels[top];
+            height = Math.max(height, level);
 
-        return Math.max(height(current.getLeftChild()), height(current.getRightChild()));
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                levels = Arrays.copyOf(levels, 2 * levels.length);
+            }
+            if (current.getLeftChild() != null) {
+                stack[top] = current.getLeftChild();
+                levels[top++] = level + 1;
+            }
+            if (current.getRightChild() != null) {
+                stack[top] = current.getRightChild();
+                levels[top++] = level + 1;
+            }
+        }
+        return height;
     }
 
     /**
@@ -298,85 +996,139 @@ public class KDTree {
      * @return the pre-order traversal of the KDTree
      */
     public String preOrder() {
-        StringBuilder out = new StringBuilder();
-        preOrder(root, out);
-        return out.toString();
+        return traversalString(preOrderIterator());
     }
 
     /**
-     * Helper method to find the pre-order traversal of the KDTree
-     * @param current node currently examined
-     * @param out placeholder for string representation of pre-order traversal
-     * @return null on completion
+     * Find the in-order traversal of the KDTree
+     * @return the in-order traversal of the KDTree
      */
-    private StringBuilder preOrder(KDNode current, StringBuilder out) {
-        if (current == null)
-            return out;
-
-        out.append(current.getCoordinates().toString()).append(" ");
-        preOrder(current.getLeftChild(), out);
-        preOrder(current.getRightChild(), out);
-
-        return null;
+    public String inOrder() {
+        return traversalString(inOrderIterator());
     }
 
+    /**
+     * Find the post-order traversal of the KDTree
+     * @return the post-order traversal of the KDTree
+     */
+    public String postOrder() {
+        return traversalString(postOrderIterator());
+    }
 
     /**
-     * Find the in-order traversal of the KDTree
-     * @return the in-order traversal of the KDTree
+     * Helper method to print a traversal
+     * @param traversal iterator over the nodes in traversal order
+     * @return string representation of the traversal
      */
-    public String inOrder() {
+    private static String traversalString(Iterator<KDNode> traversal) {
         StringBuilder out = new StringBuilder();
-        inOrder(root, out);
+        while (traversal.hasNext())
+            out.append(Arrays.toString(traversal.next().getPoint())).append(" ");
         return out.toString();
     }
 
     /**
-     * Helper method to find the in-order traversal of the KDTree
-     * @param current node currently examined
-     * @param out placeholder for string representation of in-order traversal
-     * @return null on completion
+     * Iterate over the nodes of the KDTree in pre-order without recursion
+     * @return pre-order iterator over the live nodes
      */
-    private StringBuilder inOrder(KDNode current, StringBuilder out) {
-        if (current == null)
-            return out;
+    public Iterator<KDNode> preOrderIterator() {
+        return new KDTreeIterator.PreOrder(root);
+    }
 
-        inOrder(current.getLeftChild(), out);
-        out.append(current.getCoordinates().toString()).append(" ");
-        inOrder(current.getRightChild(), out);
+    /**
+     * Iterate over the nodes of the KDTree in-order without recursion
+     * @return in-order iterator over the live nodes
+     */
+    public Iterator<KDNode> inOrderIterator() {
+        return new KDTreeIterator.InOrder(root);
+    }
 
-        return null;
+    /**
+     * Iterate over the nodes of the KDTree in post-order without recursion
+     * @return post-order iterator over the live nodes
+     */
+    public Iterator<KDNode> postOrderIterator() {
+        return new KDTreeIterator.PostOrder(root);
     }
 
     /**
-     * Find the post-order traversal of the KDTree
-     * @return the post-order traversal of the KDTree
+     * Visit the nodes of the KDTree in pre-order
+     * @param visitor callback for each live node
      */
-    public String postOrder() {
-        StringBuilder out = new StringBuilder();
-        postOrder(root, out);
-        return out.toString();
+    public void preOrder(Consumer<KDNode> visitor) {
+        preOrderIterator().forEachRemaining(visitor);
     }
 
     /**
-     * Helper method to find the post-order traversal of the KDTree
-     * @param current node currently examined
-     * @param out placeholder for string representation of post-order traversal
-     * @return null on completion
+     * Visit the nodes of the KDTree in-order
+     * @param visitor callback for each live node
      */
-    private StringBuilder postOrder(KDNode current, StringBuilder out) {
-        if (current == null)
-            return out;
+    public void inOrder(Consumer<KDNode> visitor) {
+        inOrderIterator().forEachRemaining(visitor);
+    }
 
-        postOrder(current.getLeftChild(), out);
-        postOrder(current.getRightChild(), out);
-        out.append(current.getCoordinates().toString()).append(" ");
+    /**
+     * Visit the nodes of the KDTree in post-order
+     * @param visitor callback for each live node
+     */
+    public void postOrder(Consumer<KDNode> visitor) {
+        postOrderIterator().forEachRemaining(visitor);
+    }
 
-        return null;
+    /**
+     * Iterate over the nodes of the KDTree in pre-order
+     * @return pre-order iterator over the live nodes
+     */
+    @Override
+    public Iterator<KDNode> iterator() {
+        return preOrderIterator();
+    }
+
+    /**
+     * Spliterator over the nodes of the KDTree in pre-order that splits along subtrees,
+     * so <code>StreamSupport.stream(tree.spliterator(), true)</code> processes the tree in parallel
+     * @return sized spliterator over the live nodes
+     */
+    @Override
+    public Spliterator<KDNode> spliterator() {
+        return new KDTreeSpliterator(root);
     }
 
     public int getK() { return K; }
 
+    public double getBalanceFactor() { return balanceFactor; }
+
+    /**
+     * Turn scapegoat rebalancing on insertion on or off
+     * @param balanceFactor fraction of a subtree one child may hold, between 0.5 and 1 (exclusive), or 0 to disable
+     * @throws InvalidInitializationException thrown when the balance factor is out of range
+     */
+    public void setBalanceFactor(double balanceFactor) throws InvalidInitializationException {
+        if (balanceFactor != 0 && (balanceFactor <= 0.5 || balanceFactor >= 1))
+            throw new InvalidInitializationException("Cannot balance tree with factor " + balanceFactor + "."
+                    + " Please use a factor between 0.5 and 1, or 0 to disable rebalancing.");
+
+        this.balanceFactor = balanceFactor;
+    }
+
+    /**
+     * Number of partial rebuilds done to keep the height bounded
+     * @return count of rebuilt subtrees
+     */
+    public long getRebuildCount() { return rebuildCount; }
+
+    /**
+     * Work spent on partial rebuilds to keep the height bounded
+     * @return total number of nodes relinked by all rebuilds
+     */
+    public long getRebuildWork() { return rebuildWork; }
+
+    /**
+     * Counter of changes made to the tree, for caches derived from it
+     * @return a value that differs after every insert, delete, move, compaction or bulk load
+     */
+    public long getModificationCount() { return modificationCount; }
+
     public int getSize() {
         return size;
     }
@@ -385,10 +1137,32 @@ public class KDTree {
         return root;
     }
 
+    /**
+     * Nodes of the KDTree in the order they were inserted
+     * <b>NOTE:</b> deleted nodes are dropped from the list in one pass once they pass the compaction
+     * threshold, so until then the list may still hold nodes for which {@link KDNode#isDeleted()} is true.
+     * {@link KDNode#getInsertionIndex()} of every listed node is its position in the list.
+     * @return the nodes in insertion order
+     */
     public ArrayList<KDNode> getInsertionOrder() {
         return insertionOrder;
     }
 
+    public double getCompactionThreshold() { return compactionThreshold; }
+
+    /**
+     * Set the fraction of tombstones in a subtree that triggers rebuilding it
+     * @param compactionThreshold fraction of deleted nodes, between 0 and 1
+     * @throws InvalidInitializationException thrown when the threshold is out of range
+     */
+    public void setCompactionThreshold(double compactionThreshold) throws InvalidInitializationException {
+        if (compactionThreshold < 0 || compactionThreshold > 1)
+            throw new InvalidInitializationException("Cannot compact tree with threshold " + compactionThreshold + "."
+                    + " Please use a threshold between 0 and 1.");
+
+        this.compactionThreshold = compactionThreshold;
+    }
+
     @Override
     public String toString() {
         return "In order traversal: " + inOrder();
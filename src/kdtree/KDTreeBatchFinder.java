@@ -0,0 +1,98 @@
+package kdtree;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>Batched exact search on a KDTree</h1>
+ *
+ * <p>
+ *     Sorts a batch of queries along a Morton (Z-order) curve so consecutive searches
+ *     follow mostly the same path from the root, keeping the upper levels of the tree in cache.
+ *     The sorted batch is then split into chunks that are searched in parallel on the common
+ *     {@link ForkJoinPool}, each result being written at the original index of its query.
+ * </p>
+ */
+class KDTreeBatchFinder extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 12;
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+    private final KDTree tree;
+    private final int[][] queries;
+    private final long[] order; // Morton key in the high half, query index in the low half
+    private final boolean[] found;
+    private final int lo;
+    private final int hi;
+
+    private KDTreeBatchFinder(KDTree tree, int[][] queries, long[] order, boolean[] found, int lo, int hi) {
+        this.tree = tree;
+        this.queries = queries;
+        this.order = order;
+        this.found = found;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    /**
+     * Search for every query of a batch
+     * @param tree tree to search
+     * @param queries points to search for, all matching the dimensions of the tree
+     * @return for each query, true if a node with matching coordinates is in the tree
+     */
+    static boolean[] findAll(KDTree tree, int[][] queries) {
+        int n = queries.length;
+        long[] order = new long[n];
+        // the key fills the sign bit once shifted, so it is flipped to make the signed sort follow the curve
+        for (int i = 0; i < n; i++)
+            order[i] = (mortonKey(queries[i]) << 32 | i) ^ Long.MIN_VALUE;
+        Arrays.parallelSort(order);
+
+        boolean[] found = new boolean[n];
+        KDTreeBatchFinder task = new KDTreeBatchFinder(tree, queries, order, found, 0, n);
+        if (n < SEQUENTIAL_THRESHOLD)
+            task.compute();
+        else
+            ForkJoinPool.commonPool().invoke(task);
+
+        return found;
+    }
+
+    @Override
+    protected void compute() {
+        if (hi - lo < SEQUENTIAL_THRESHOLD) {
+            for (int i = lo; i < hi; i++) {
+                int index = (int) (order[i] & INDEX_MASK);
+                found[index] = tree.findNode(queries[index]) != null;
+            }
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new KDTreeBatchFinder(tree, queries, order, found, lo, mid),
+                new KDTreeBatchFinder(tree, queries, order, found, mid, hi));
+    }
+
+    /**
+     * Position of a point along the Morton curve, interleaving the leading bits of
+     * each coordinate. Only the first 32 dimensions take part in higher dimensions.
+     * @param point coordinates of the point
+     * @return 32 bit Morton key, as a non-negative long
+     */
+    static long mortonKey(int[] point) {
+        int dimensions = Math.min(point.length, 32);
+        int bitsPerDimension = 32 / dimensions;
+
+        long key = 0;
+        for (int bit = 31; bit > 31 - bitsPerDimension; bit--) {
+            for (int d = 0; d < dimensions; d++) {
+                // flipping the sign bit orders negative coordinates before positive ones
+                int unsigned = point[d] ^ Integer.MIN_VALUE;
+                key = key << 1 | (unsigned >>> bit & 1);
+            }
+        }
+
+        return key << (32 - bitsPerDimension * dimensions);
+    }
+}
@@ -0,0 +1,95 @@
+package kdtree;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>Batched k nearest neighbour search on a KDTree</h1>
+ *
+ * <p>
+ *     Splits a batch of queries into chunks searched in parallel on the common
+ *     {@link ForkJoinPool}. Each chunk allocates one candidate heap and one explicit
+ *     traversal stack and reuses them for all of its queries, so the search itself
+ *     allocates nothing. Results are written to flat primitive arrays, k slots per query.
+ * </p>
+ */
+class KDTreeBatchNearest extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 10;
+
+    private final Batch batch;
+    private final int lo;
+    private final int hi;
+
+    /**
+     * Inputs and outputs shared by all chunks of a batch
+     */
+    private static class Batch {
+        KDNode root;
+        int K;
+        int k;
+        int capacity; // candidates kept per query, at most the size of the tree
+        int[][] queries;
+        int[] outIndices;
+        double[] outDistances;
+    }
+
+    private KDTreeBatchNearest(Batch batch, int lo, int hi) {
+        this.batch = batch;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    /**
+     * Search the k nearest neighbours of every query of a batch
+     * @param root root of the tree, must hold at least one live node
+     * @param size number of live nodes in the tree
+     * @param K dimensions of the tree
+     * @param queries points to search around, all matching the dimensions of the tree
+     * @param k number of neighbours per query
+     * @param outIndices receives the insertion indices, k slots per query
+     * @param outDistances receives the Euclidean distances, k slots per query
+     */
+    static void kNearestAll(KDNode root, int size, int K, int[][] queries, int k,
+                            int[] outIndices, double[] outDistances) {
+        Batch batch = new Batch();
+        batch.root = root;
+        batch.K = K;
+        batch.k = k;
+        batch.capacity = Math.min(k, size);
+        batch.queries = queries;
+        batch.outIndices = outIndices;
+        batch.outDistances = outDistances;
+
+        KDTreeBatchNearest task = new KDTreeBatchNearest(batch, 0, queries.length);
+        if (queries.length < SEQUENTIAL_THRESHOLD)
+            task.compute();
+        else
+            ForkJoinPool.commonPool().invoke(task);
+    }
+
+    @Override
+    protected void compute() {
+        if (hi - lo < SEQUENTIAL_THRESHOLD) {
+            searchChunk();
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new KDTreeBatchNearest(batch, lo, mid), new KDTreeBatchNearest(batch, mid, hi));
+    }
+
+    /**
+     * Search every query of this chunk with one heap and one stack
+     */
+    private void searchChunk() {
+        NeighborHeap heap = new NeighborHeap(batch.capacity);
+        KDTree.SearchStack stack = new KDTree.SearchStack();
+
+        for (int q = lo; q < hi; q++) {
+            heap.clear();
+            KDTree.nearest(batch.root, batch.K, batch.queries[q], heap, stack);
+            heap.drainInto(batch.outIndices, batch.outDistances, q * batch.k, batch.k);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package kdtree;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <h1>Balanced KDTree construction</h1>
+ *
+ * <p>
+ *     Builds a subtree from an array of nodes by splitting on the median of
+ *     the dimension for each depth, chosen with quickselect instead of
+ *     insertion order. Large ranges are split into subtasks on the common
+ *     {@link ForkJoinPool} so both halves of a split are built in parallel.
+ * </p>
+ * <b>NOTE:</b> ties on the split dimension always go to the right subtree,
+ * matching the search direction used by {@link KDTree#find(int...)}.
+ */
+class KDTreeBuilder extends RecursiveTask<KDNode> {
+    private static final long serialVersionUID = 1L;
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+    private final KDNode[] nodes;
+    private final int lo;
+    private final int hi;
+    private final int depth;
+    private final int K;
+
+    private KDTreeBuilder(KDNode[] nodes, int lo, int hi, int depth, int K) {
+        this.nodes = nodes;
+        this.lo = lo;
+        this.hi = hi;
+        this.depth = depth;
+        this.K = K;
+    }
+
+    /**
+     * Build a balanced subtree from a range of nodes
+     * <b>NOTE:</b> the range of the array is reordered in place
+     * @param nodes nodes to link together, must not contain duplicate points or tombstones
+     * @param lo first index of the range (inclusive)
+     * @param hi last index of the range (exclusive)
+     * @param depth depth of the root of the subtree
+     * @param K dimensions of the tree
+     * @return root of the subtree, null if the range is empty
+     */
+    static KDNode build(KDNode[] nodes, int lo, int hi, int depth, int K) {
+        if (hi - lo < SEQUENTIAL_THRESHOLD)
+            return buildSequential(nodes, lo, hi, depth, K);
+
+        return ForkJoinPool.commonPool().invoke(new KDTreeBuilder(nodes, lo, hi, depth, K));
+    }
+
+    @Override
+    protected KDNode compute() {
+        if (hi - lo < SEQUENTIAL_THRESHOLD)
+            return buildSequential(nodes, lo, hi, depth, K);
+
+        int median = partitionAtMedian(nodes, lo, hi, depth % K);
+
+        KDTreeBuilder leftTask = new KDTreeBuilder(nodes, lo, median, depth + 1, K);
+        leftTask.fork();
+        KDNode right = new KDTreeBuilder(nodes, median + 1, hi, depth + 1, K).compute();
+        KDNode left = leftTask.join();
+
+        return link(nodes[median], left, right, depth);
+    }
+
+    /**
+     * Helper method to build a subtree on the calling thread
+     * @param nodes nodes to link together
+     * @param lo first index of the range (inclusive)
+     * @param hi last index of the range (exclusive)
+     * @param depth depth of the root of the subtree
+     * @param K dimensions of the tree
+     * @return root of the subtree, null if the range is empty
+     */
+    private static KDNode buildSequential(KDNode[] nodes, int lo, int hi, int depth, int K) {
+        if (lo >= hi)
+            return null;
+
+        int median = partitionAtMedian(nodes, lo, hi, depth % K);
+        KDNode left = buildSequential(nodes, lo, median, depth + 1, K);
+        KDNode right = buildSequential(nodes, median + 1, hi, depth + 1, K);
+
+        return link(nodes[median], left, right, depth);
+    }
+
+    /**
+     * Attach both children to a subtree root
+     * @param current root of the subtree
+     * @param left root of the left subtree, may be null
+     * @param right root of the right subtree, may be null
+     * @param depth depth of the root of the subtree
+     * @return the root of the subtree
+     */
+    private static KDNode link(KDNode current, KDNode left, KDNode right, int depth) {
+        current.setDepth(depth);
+        current.setLeftChild(left);
+        current.setRightChild(right);
+        if (left != null)
+            left.setParent(current);
+        if (right != null)
+            right.setParent(current);
+        current.recomputeSummary();
+
+        return current;
+    }
+
+    /**
+     * Reorder a range so the median of a dimension sits at the returned index,
+     * every node before it is strictly smaller and every node after it is at least as large
+     * @param nodes nodes to reorder
+     * @param lo first index of the range (inclusive)
+     * @param hi last index of the range (exclusive)
+     * @param dimension dimension to split on
+     * @return index of the split node
+     */
+    static int partitionAtMedian(KDNode[] nodes, int lo, int hi, int dimension) {
+        int median = (lo + hi - 1) >>> 1;
+        select(nodes, lo, hi - 1, median, dimension);
+
+        // move every node tied with the median to the right side of the split
+        int value = nodes[median].getCoordinate(dimension);
+        int split = lo;
+        for (int i = lo; i < median; i++) {
+            if (nodes[i].getCoordinate(dimension) < value)
+                swap(nodes, i, split++);
+        }
+        swap(nodes, split, median);
+
+        return split;
+    }
+
+    /**
+     * Quickselect the k-th smallest node of a dimension into place,
+     * leaving no larger node before it and no smaller node after it
+     * @param nodes nodes to reorder
+     * @param left first index of the range (inclusive)
+     * @param right last index of the range (inclusive)
+     * @param k index to place the k-th smallest node at
+     * @param dimension dimension to compare
+     */
+    static void select(KDNode[] nodes, int left, int right, int k, int dimension) {
+        while (left < right) {
+            int pivot = medianOfThree(nodes[left].getCoordinate(dimension),
+                    nodes[(left + right) >>> 1].getCoordinate(dimension),
+                    nodes[right].getCoordinate(dimension));
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (nodes[i].getCoordinate(dimension) < pivot)
+                    i++;
+                while (nodes[j].getCoordinate(dimension) > pivot)
+                    j--;
+                if (i <= j)
+                    swap(nodes, i++, j--);
+            }
+
+            if (k <= j)
+                right = j;
+            else if (k >= i)
+                left = i;
+            else
+                return;
+        }
+    }
+
+    private static int medianOfThree(int a, int b, int c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static void swap(KDNode[] nodes, int i, int j) {
+        KDNode temp = nodes[i];
+        nodes[i] = nodes[j];
+        nodes[j] = temp;
+    }
+}
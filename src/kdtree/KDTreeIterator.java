@@ -0,0 +1,146 @@
+package kdtree;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <h1>Non-recursive traversal of a KDTree</h1>
+ *
+ * <p>
+ *     Walks the tree with an explicit array stack, so deep or degenerate trees
+ *     cannot overflow the call stack and no object is allocated per node.
+ *     Deleted nodes are skipped, as are subtrees holding only deleted nodes.
+ * </p>
+ * <b>NOTE:</b> the iterator is not fail-fast, the tree must not be modified while iterating.
+ */
+abstract class KDTreeIterator implements Iterator<KDNode> {
+    private KDNode[] stack = new KDNode[64];
+    private int top = 0;
+    private KDNode nextLive;
+
+    /**
+     * Find the next node of the traversal, including deleted ones
+     * @return the next node, null once the traversal is finished
+     */
+    abstract KDNode advance();
+
+    @Override
+    public boolean hasNext() {
+        while (nextLive == null) {
+            KDNode candidate = advance();
+            if (candidate == null)
+                return false;
+            if (!candidate.isDeleted())
+                nextLive = candidate;
+        }
+        return true;
+    }
+
+    @Override
+    public KDNode next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        KDNode out = nextLive;
+        nextLive = null;
+        return out;
+    }
+
+    void push(KDNode node) {
+        if (node == null || node.getLiveCount() == 0)
+            return;
+        if (top == stack.length)
+            stack = Arrays.copyOf(stack, 2 * top);
+        stack[top++] = node;
+    }
+
+    KDNode pop() {
+        KDNode out = stack[--top];
+        stack[top] = null;
+        return out;
+    }
+
+    KDNode peek() { return stack[top - 1]; }
+
+    boolean isEmpty() { return top == 0; }
+
+    /**
+     * Pre-order traversal: node, left subtree, right subtree
+     */
+    static class PreOrder extends KDTreeIterator {
+        PreOrder(KDNode root) {
+            push(root);
+        }
+
+        @Override
+        KDNode advance() {
+            if (isEmpty())
+                return null;
+
+            KDNode current = pop();
+            push(current.getRightChild());
+            push(current.getLeftChild());
+            return current;
+        }
+    }
+
+    /**
+     * In-order traversal: left subtree, node, right subtree
+     */
+    static class InOrder extends KDTreeIterator {
+        InOrder(KDNode root) {
+            pushLeftSpine(root);
+        }
+
+        private void pushLeftSpine(KDNode current) {
+            while (current != null && current.getLiveCount() > 0) {
+                push(current);
+                current = current.getLeftChild();
+            }
+        }
+
+        @Override
+        KDNode advance() {
+            if (isEmpty())
+                return null;
+
+            KDNode current = pop();
+            pushLeftSpine(current.getRightChild());
+            return current;
+        }
+    }
+
+    /**
+     * Post-order traversal: left subtree, right subtree, node
+     */
+    static class PostOrder extends KDTreeIterator {
+        PostOrder(KDNode root) {
+            pushFirstLeaf(root);
+        }
+
+        /**
+         * Push the path down to the first node of a subtree in post-order,
+         * preferring left children and falling back to right children
+         * @param current root of the subtree
+         */
+        private void pushFirstLeaf(KDNode current) {
+            while (current != null && current.getLiveCount() > 0) {
+                push(current);
+                KDNode left = current.getLeftChild();
+                current = left != null && left.getLiveCount() > 0 ? left : current.getRightChild();
+            }
+        }
+
+        @Override
+        KDNode advance() {
+            if (isEmpty())
+                return null;
+
+            KDNode current = pop();
+            if (!isEmpty() && peek().getLeftChild() == current)
+                pushFirstLeaf(peek().getRightChild());
+            return current;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package kdtree;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <h1>Streaming loader of points from files into a KDTree</h1>
+ *
+ * <p>
+ *     Reads a file through a {@link FileChannel} on a parser thread, while the calling
+ *     thread feeds the parsed points to the tree, so parsing and building overlap.
+ *     Points travel between the threads in batches through a small bounded queue.
+ *     Bytes are parsed directly into <code>int</code> coordinates, so no String is
+ *     allocated per field or per line.
+ * </p>
+ * Supported formats:
+ * <ul>
+ *     <li>{@link Format#CSV}: one point per line, K integers separated by commas;
+ *     blank lines and lines starting with '#' are skipped</li>
+ *     <li>{@link Format#INT32}: K little-endian 32 bit integers per point, without any header</li>
+ * </ul>
+ */
+public class KDTreeLoader {
+    public enum Format { CSV, INT32 }
+
+    public enum Mode {
+        INSERT,   // insert each point as it arrives
+        BULK_LOAD // gather all points, then build a balanced tree in one pass
+    }
+
+    /**
+     * Thrown when a line of a CSV file cannot be parsed, telling which line and why
+     */
+    public static class MalformedLineException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final long lineNumber;
+        private final String reason;
+
+        MalformedLineException(Path path, long lineNumber, String reason) {
+            super(path + ":" + lineNumber + ": " + reason);
+            this.lineNumber = lineNumber;
+            this.reason = reason;
+        }
+
+        /**
+         * Number of the malformed line, counting from 1
+         * @return the line number
+         */
+        public long getLineNumber() { return lineNumber; }
+
+        /**
+         * What is wrong with the line, without the file name and line number
+         * @return the reason the line was rejected
+         */
+        public String getReason() { return reason; }
+    }
+
+    private static final int DEFAULT_BATCH_SIZE = 1 << 16;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+    private static final int QUEUE_CAPACITY = 4;
+    private static final int[][] END = new int[0][]; // marks the end of the stream
+
+    private final KDTree tree;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private Mode mode = Mode.BULK_LOAD;
+
+    /**
+     * Ctor for a loader feeding a tree
+     * @param tree the tree to load points into
+     */
+    public KDTreeLoader(KDTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Load every point of a file into the tree
+     * @param path file to read
+     * @param format format of the file
+     * @return number of points read from the file, including duplicates discarded by the tree
+     * @throws IOException if the file cannot be read or is malformed; in {@link Mode#INSERT}
+     *                     the points before the error are left in the tree
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     * @throws NodeInsertionException if a point cannot be inserted into the tree
+     */
+    public long load(Path path, Format format)
+            throws IOException, InvalidInitializationException, NodeInsertionException {
+        BlockingQueue<int[][]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Parser parser = new Parser(path, format, queue);
+        Thread parserThread = new Thread(parser, "kdtree-loader-" + path.getFileName());
+        parserThread.setDaemon(true);
+        parserThread.start();
+
+        long read = 0;
+        ArrayList<KDNode> gathered = new ArrayList<>();
+        try {
+            while (true) {
+                int[][] batch = queue.take();
+                if (batch == END)
+                    break;
+
+                read += batch.length;
+                for (int[] point : batch) {
+                    if (mode == Mode.INSERT)
+                        tree.insert(new KDNode(point));
+                    else
+                        gathered.add(new KDNode(point));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + path);
+        } finally {
+            parserThread.interrupt();
+            joinQuietly(parserThread);
+        }
+
+        if (parser.failure != null)
+            throw parser.failure;
+
+        if (mode == Mode.BULK_LOAD)
+            tree.bulkLoad(gathered);
+        return read;
+    }
+
+    private static void joinQuietly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    public int getBatchSize() { return batchSize; }
+
+    /**
+     * Set the number of points handed from the parser to the tree at a time
+     * @param batchSize points per batch
+     * @throws InvalidInitializationException if the batch size is less than 1
+     */
+    public void setBatchSize(int batchSize) throws InvalidInitializationException {
+        if (batchSize < 1)
+            throw new InvalidInitializationException("Batch size of " + batchSize + " must be at least 1");
+        this.batchSize = batchSize;
+    }
+
+    public Mode getMode() { return mode; }
+    public void setMode(Mode mode) { this.mode = mode; }
+
+    /**
+     * Parses a file on its own thread and hands batches of points to the loading thread
+     */
+    private class Parser implements Runnable {
+        private final Path path;
+        private final Format format;
+        private final BlockingQueue<int[][]> queue;
+        private final int K;
+
+        private int[][] batch;
+        private int count;
+        volatile IOException failure;
+
+        Parser(Path path, Format format, BlockingQueue<int[][]> queue) {
+            this.path = path;
+            this.format = format;
+            this.queue = queue;
+            this.K = tree.getK();
+            this.batch = new int[batchSize][];
+        }
+
+        @Override
+        public void run() {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (format == Format.CSV)
+                    parseCsv(channel);
+                else
+                    parseInt32(channel);
+
+                if (count > 0)
+                    queue.put(Arrays.copyOf(batch, count));
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                return; // the loading thread gave up, nobody is waiting for the end marker
+            }
+
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // the loading thread gave up
+            }
+        }
+
+        private void emit(int[] point) throws InterruptedException {
+            batch[count++] = point;
+            if (count == batch.length) {
+                queue.put(batch);
+                batch = new int[batchSize][];
+                count = 0;
+            }
+        }
+
+        /**
+         * Parse little-endian 32 bit integers, K per point
+         * @param channel the open file
+         * @throws IOException if the file cannot be read or does not hold whole points
+         * @throws InterruptedException if the loading thread gave up
+         */
+        private void parseInt32(FileChannel channel) throws IOException, InterruptedException {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            int pointBytes = K * Integer.BYTES;
+
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.remaining() >= pointBytes) {
+                    int[] point = new int[K];
+                    for (int d = 0; d < K; d++)
+                        point[d] = buffer.getInt();
+                    emit(point);
+                }
+                buffer.compact();
+            }
+
+            if (buffer.position() > 0)
+                throw new IOException(path + " ends with " + buffer.position() + " bytes,"
+                        + " less than one point of " + pointBytes + " bytes");
+        }
+
+        /**
+         * Parse comma separated integers, one point per line
+         * @param channel the open file
+         * @throws IOException if the file cannot be read or a line is malformed
+         * @throws InterruptedException if the loading thread gave up
+         */
+        private void parseCsv(FileChannel channel) throws IOException, InterruptedException {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+
+            long line = 1;
+            int[] point = new int[K];
+            int field = 0;
+            long value = 0;
+            boolean negative = false;
+            boolean digits = false;   // digits seen in the current field
+            boolean closed = false;   // blank seen after the digits of the current field
+            boolean inField = false;  // anything but blanks seen on the current line
+            boolean comment = false;
+
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                // the end of the file acts as one more line break, ending a last line without one
+                boolean last = read < 0;
+                int end = last ? 1 : buffer.limit();
+
+                for (int i = 0; i < end; i++) {
+                    byte c = last ? (byte) '\n' : buffer.get(i);
+
+                    if (comment) {
+                        if (c == '\n') {
+                            comment = false;
+                            line++;
+                        }
+                        continue;
+                    }
+
+                    if (closed && c != ',' && c != '\n' && c != ' ' && c != '\t' && c != '\r') {
+                        throw new MalformedLineException(path, line, "missing comma between coordinates");
+                    } else if (c >= '0' && c <= '9') {
+                        value = value * 10 + (c - '0');
+                        if (value > (long) Integer.MAX_VALUE + 1)
+                            throw new MalformedLineException(path, line, "coordinate out of int range");
+                        digits = true;
+                        inField = true;
+                    } else if (c == '-' && !digits && !negative) {
+                        negative = true;
+                        inField = true;
+                    } else if (c == ' ' || c == '\t' || c == '\r') {
+                        closed = digits; // blanks around fields are ignored
+                    } else if (c == '#' && !inField && field == 0) {
+                        comment = true;
+                    } else if (c == ',' || c == '\n') {
+                        if (c == '\n' && !inField && field == 0) {
+                            line++;
+                            continue; // blank line
+                        }
+                        if (!digits)
+                            throw new MalformedLineException(path, line, "empty coordinate");
+                        if (field == K)
+                            throw new MalformedLineException(path, line, "more than " + K + " coordinates");
+
+                        long signed = negative ? -value : value;
+                        if (signed > Integer.MAX_VALUE)
+                            throw new MalformedLineException(path, line, "coordinate out of int range");
+                        point[field++] = (int) signed;
+                        value = 0;
+                        negative = false;
+                        digits = false;
+                        closed = false;
+
+                        if (c == '\n') {
+                            if (field != K)
+                                throw new MalformedLineException(path, line, field
+                                        + " coordinates, expected " + K);
+                            emit(point);
+                            point = new int[K];
+                            field = 0;
+                            inField = false;
+                            line++;
+                        }
+                    } else {
+                        throw new MalformedLineException(path, line, "unexpected character '" + (char) c + "'");
+                    }
+                }
+
+                if (last)
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package kdtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * <h1>Spatial map from points to primitive long values</h1>
+ *
+ * <p>
+ *     Specialization of {@link KDTreeMap} for <code>long</code> values such as record IDs.
+ *     The value is a primitive field of each node, so storing and querying values never
+ *     boxes, and queries returning several values return them as a <code>long[]</code>.
+ *     Narrower IDs such as <code>int</code> are stored widened to <code>long</code>.
+ * </p>
+ * <b>NOTE:</b> Putting a point that is already in the map replaces its value.
+ * The map takes ownership of the coordinate arrays it is given.
+ */
+public class KDTreeLongMap {
+    private final KDTree tree;
+
+    /**
+     * Node of the underlying tree holding the value of its point
+     */
+    private static final class LongValueNode extends KDNode {
+        private long value;
+
+        LongValueNode(int[] point, long value) {
+            super(point);
+            this.value = value;
+        }
+    }
+
+    /**
+     * Ctor only for defining dimensions of KDTreeLongMap
+     * @param K dimensions of the points
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     */
+    public KDTreeLongMap(int K) throws InvalidInitializationException {
+        tree = new KDTree(K);
+    }
+
+    /**
+     * Associate a value with a point
+     * @param point coordinates of the point
+     * @param value value to store at the point
+     * @return true if the point is new, false if the value of an existing point was replaced
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     * @throws NodeInsertionException thrown when point does not match dimensions of the map
+     */
+    public boolean put(int[] point, long value) throws InvalidInitializationException, NodeInsertionException {
+        if (tree.insert(new LongValueNode(point, value)))
+            return true;
+
+        ((LongValueNode) tree.findNode(point)).value = value;
+        return false;
+    }
+
+    /**
+     * Find the value stored at a point
+     * @param point coordinates to match
+     * @param defaultValue value to return if the point is not in the map
+     * @return the value stored at the point, or the default value if the point is not in the map
+     * @throws InvalidSearchException if the point does not match the dimensions of the map
+     */
+    public long getOrDefault(int[] point, long defaultValue) throws InvalidSearchException {
+        if (point.length != tree.getK())
+            throw new InvalidSearchException("Search node's dimensions of " + point.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + tree.getK());
+
+        KDNode node = tree.findNode(point);
+        return node == null ? defaultValue : ((LongValueNode) node).value;
+    }
+
+    public boolean containsPoint(int... point) throws InvalidSearchException {
+        return tree.find(point);
+    }
+
+    /**
+     * Remove a point and its value
+     * @param point coordinates of the point to remove
+     * @return true if the point was in the map
+     * @throws InvalidSearchException if the point does not match the dimensions of the map
+     */
+    public boolean remove(int... point) throws InvalidSearchException {
+        return tree.delete(point);
+    }
+
+    /**
+     * Find the value of the point nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @return the value of the point with the smallest Euclidean distance to the query
+     * @throws InvalidSearchException if the map is empty or the query does not match the dimensions of the map
+     */
+    public long nearest(int... searchPoint) throws InvalidSearchException {
+        return ((LongValueNode) tree.nearest(searchPoint)).value;
+    }
+
+    /**
+     * Find the values of the k points nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @param k number of neighbours to find
+     * @return up to k values ordered from nearest to farthest point
+     * @throws InvalidSearchException if the map is empty, k is less than 1,
+     *                                or the query does not match the dimensions of the map
+     */
+    public long[] kNearest(int[] searchPoint, int k) throws InvalidSearchException {
+        return values(tree.kNearest(searchPoint, k));
+    }
+
+    /**
+     * Find the values of all points inside an axis-aligned box
+     * @param lowerCorner smallest coordinate of the box in each dimension (inclusive)
+     * @param upperCorner largest coordinate of the box in each dimension (inclusive)
+     * @return the values of the points inside the box
+     * @throws InvalidSearchException if the corners do not match the dimensions of the map
+     */
+    public long[] rangeQuery(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        return values(tree.rangeQuery(lowerCorner, upperCorner));
+    }
+
+    public int rangeCount(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        return tree.rangeCount(lowerCorner, upperCorner);
+    }
+
+    /**
+     * Receives the coordinates and value of each point of the map
+     */
+    public interface EntryVisitor {
+        void visit(int[] point, long value);
+    }
+
+    /**
+     * Visit every point and its value in pre-order
+     * @param visitor callback for a copy of the coordinates and the value of each point
+     */
+    public void forEach(EntryVisitor visitor) {
+        tree.preOrder(node -> visitor.visit(node.getPoint().clone(), ((LongValueNode) node).value));
+    }
+
+    public int getK() { return tree.getK(); }
+
+    public int getSize() { return tree.getSize(); }
+
+    private static long[] values(ArrayList<KDNode> nodes) {
+        long[] values = new long[nodes.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = ((LongValueNode) nodes.get(i)).value;
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("Entries in pre-order:");
+        forEach((point, value) -> out.append(" ").append(Arrays.toString(point)).append("=").append(value));
+        return out.toString();
+    }
+}
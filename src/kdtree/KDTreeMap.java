@@ -0,0 +1,168 @@
+package kdtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * <h1>Spatial map from points to values</h1>
+ *
+ * <p>
+ *     A {@link KDTree} whose nodes carry a value each. The value is a field of the node
+ *     itself, so there is no wrapper object or separate hash map per entry, and every
+ *     query returns values directly from the nodes it reaches.
+ * </p>
+ * <b>NOTE:</b> Putting a point that is already in the map replaces its value.
+ * The map takes ownership of the coordinate arrays it is given.
+ *
+ * @param <V> type of the values
+ */
+public class KDTreeMap<V> {
+    private final KDTree tree;
+
+    /**
+     * Node of the underlying tree holding the value of its point
+     * @param <V> type of the value
+     */
+    private static final class ValueNode<V> extends KDNode {
+        private V value;
+
+        ValueNode(int[] point, V value) {
+            super(point);
+            this.value = value;
+        }
+    }
+
+    /**
+     * Ctor only for defining dimensions of KDTreeMap
+     * @param K dimensions of the points
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     */
+    public KDTreeMap(int K) throws InvalidInitializationException {
+        tree = new KDTree(K);
+    }
+
+    /**
+     * Associate a value with a point
+     * @param point coordinates of the point
+     * @param value value to store at the point
+     * @return the value previously stored at the point, or null if the point is new
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     * @throws NodeInsertionException thrown when point does not match dimensions of the map
+     */
+    public V put(int[] point, V value) throws InvalidInitializationException, NodeInsertionException {
+        if (tree.insert(new ValueNode<>(point, value)))
+            return null;
+
+        ValueNode<V> existing = valueNode(tree.findNode(point));
+        V previous = existing.value;
+        existing.value = value;
+        return previous;
+    }
+
+    /**
+     * Find the value stored at a point
+     * @param point coordinates to match
+     * @return the value stored at the point, or null if the point is not in the map
+     * @throws InvalidSearchException if the point does not match the dimensions of the map
+     */
+    public V get(int... point) throws InvalidSearchException {
+        checkDimensions(point);
+        KDNode node = tree.findNode(point);
+        return node == null ? null : valueNode(node).value;
+    }
+
+    public boolean containsPoint(int... point) throws InvalidSearchException {
+        return tree.find(point);
+    }
+
+    /**
+     * Remove a point and its value
+     * @param point coordinates of the point to remove
+     * @return the value stored at the point, or null if the point is not in the map
+     * @throws InvalidSearchException if the point does not match the dimensions of the map
+     */
+    public V remove(int... point) throws InvalidSearchException {
+        V value = get(point);
+        tree.delete(point);
+        return value;
+    }
+
+    /**
+     * Find the value of the point nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @return the value of the point with the smallest Euclidean distance to the query
+     * @throws InvalidSearchException if the map is empty or the query does not match the dimensions of the map
+     */
+    public V nearest(int... searchPoint) throws InvalidSearchException {
+        return valueNode(tree.nearest(searchPoint)).value;
+    }
+
+    /**
+     * Find the values of the k points nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @param k number of neighbours to find
+     * @return up to k values ordered from nearest to farthest point
+     * @throws InvalidSearchException if the map is empty, k is less than 1,
+     *                                or the query does not match the dimensions of the map
+     */
+    public ArrayList<V> kNearest(int[] searchPoint, int k) throws InvalidSearchException {
+        return values(tree.kNearest(searchPoint, k));
+    }
+
+    /**
+     * Find the values of all points inside an axis-aligned box
+     * @param lowerCorner smallest coordinate of the box in each dimension (inclusive)
+     * @param upperCorner largest coordinate of the box in each dimension (inclusive)
+     * @return the values of the points inside the box
+     * @throws InvalidSearchException if the corners do not match the dimensions of the map
+     */
+    public ArrayList<V> rangeQuery(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        return values(tree.rangeQuery(lowerCorner, upperCorner));
+    }
+
+    public int rangeCount(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        return tree.rangeCount(lowerCorner, upperCorner);
+    }
+
+    /**
+     * Visit every point and its value in pre-order
+     * @param visitor callback for a copy of the coordinates and the value of each point
+     */
+    public void forEach(BiConsumer<int[], V> visitor) {
+        tree.preOrder(node -> visitor.accept(node.getPoint().clone(), valueNode(node).value));
+    }
+
+    public int getK() { return tree.getK(); }
+
+    public int getSize() { return tree.getSize(); }
+
+    private ArrayList<V> values(ArrayList<KDNode> nodes) {
+        ArrayList<V> values = new ArrayList<>(nodes.size());
+        for (KDNode node : nodes)
+            values.add(valueNode(node).value);
+        return values;
+    }
+
+    /**
+     * Every node of the underlying tree is a value node, since only this class inserts into it
+     */
+    @SuppressWarnings("unchecked")
+    private ValueNode<V> valueNode(KDNode node) {
+        return (ValueNode<V>) node;
+    }
+
+    private void checkDimensions(int[] point) throws InvalidSearchException {
+        if (point.length != tree.getK())
+            throw new InvalidSearchException("Search node's dimensions of " + point.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + tree.getK());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("Entries in pre-order:");
+        forEach((point, value) -> out.append(" ").append(Arrays.toString(point)).append("=").append(value));
+        return out.toString();
+    }
+}
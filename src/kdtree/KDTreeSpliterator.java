@@ -0,0 +1,124 @@
+package kdtree;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * <h1>Spliterator over a KDTree in pre-order</h1>
+ *
+ * <p>
+ *     Pending work is an explicit stack of entries, each either a whole subtree or a
+ *     single node. Splitting hands the first half of the entries to a new spliterator;
+ *     a lone subtree is first opened into its root, left subtree and right subtree, so
+ *     parallel streams divide the tree along its own subtrees. Sizes come from the live
+ *     counts kept in each node, so the spliterator is exactly sized.
+ * </p>
+ * <b>NOTE:</b> the spliterator is not fail-fast, the tree must not be modified while it is in use.
+ */
+class KDTreeSpliterator implements Spliterator<KDNode> {
+    private KDNode[] nodes;
+    private boolean[] wholeSubtree; // false when the entry stands for its node alone
+    private int top;
+    private long remaining; // live nodes left to report
+
+    /**
+     * Ctor for a spliterator over a whole tree
+     * @param root root of the tree, may be null
+     */
+    KDTreeSpliterator(KDNode root) {
+        this(new KDNode[64], new boolean[64], 0);
+        push(root, true);
+    }
+
+    private KDTreeSpliterator(KDNode[] nodes, boolean[] wholeSubtree, int top) {
+        this.nodes = nodes;
+        this.wholeSubtree = wholeSubtree;
+        this.top = top;
+        for (int i = 0; i < top; i++)
+            remaining += liveCount(i);
+    }
+
+    private long liveCount(int entry) {
+        if (wholeSubtree[entry])
+            return nodes[entry].getLiveCount();
+        return nodes[entry].isDeleted() ? 0 : 1;
+    }
+
+    private void push(KDNode node, boolean whole) {
+        if (node == null || (whole && node.getLiveCount() == 0))
+            return;
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, 2 * top);
+            wholeSubtree = Arrays.copyOf(wholeSubtree, 2 * top);
+        }
+        nodes[top] = node;
+        wholeSubtree[top] = whole;
+        top++;
+        remaining += whole ? node.getLiveCount() : (node.isDeleted() ? 0 : 1);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super KDNode> action) {
+        while (top > 0) {
+            top--;
+            KDNode current = nodes[top];
+            nodes[top] = null;
+            if (wholeSubtree[top]) {
+                // children are pushed without counting them again
+                long saved = remaining;
+                push(current.getRightChild(), true);
+                push(current.getLeftChild(), true);
+                remaining = saved;
+            }
+
+            if (!current.isDeleted()) {
+                remaining--;
+                action.accept(current);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<KDNode> trySplit() {
+        if (top == 1 && wholeSubtree[0]) {
+            // open the lone subtree so its entries can be divided
+            KDNode current = nodes[0];
+            top = 0;
+            remaining = 0;
+            push(current.getRightChild(), true);
+            push(current.getLeftChild(), true);
+            push(current, false);
+        }
+        if (top < 2)
+            return null;
+
+        // entries at the top of the stack come first in pre-order, so they form the prefix
+        int prefixEntries = top / 2;
+        int keep = top - prefixEntries;
+        KDNode[] prefixNodes = new KDNode[Math.max(64, 2 * prefixEntries)];
+        boolean[] prefixWhole = new boolean[prefixNodes.length];
+        System.arraycopy(nodes, keep, prefixNodes, 0, prefixEntries);
+        System.arraycopy(wholeSubtree, keep, prefixWhole, 0, prefixEntries);
+
+        Arrays.fill(nodes, keep, top, null);
+        top = keep;
+        remaining = 0;
+        for (int i = 0; i < top; i++)
+            remaining += liveCount(i);
+
+        return new KDTreeSpliterator(prefixNodes, prefixWhole, prefixEntries);
+    }
+
+    @Override
+    public long estimateSize() {
+        return remaining;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | DISTINCT;
+    }
+}
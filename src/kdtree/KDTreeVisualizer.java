@@ -1,8 +1,26 @@
 package kdtree;
 
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
 import javax.swing.*;
 
 /**
@@ -11,6 +29,10 @@ import javax.swing.*;
  * <ul>
  *     <li>Currently only works for 2-dimensional KD-Trees.</li>
  *     <li>Will automatically resize depending on input values of evaluated KD-Tree.</li>
+ *     <li>Drag to pan, scroll to zoom around the cursor and double-click to reset the view.</li>
+ *     <li>Regions denser than the density threshold are shaded as one cell instead of drawn point by point.</li>
+ *     <li>Can render to PNG files without a display, split into tiles drawn in parallel.</li>
+ *     <li>Can follow a {@link ConcurrentKDTree} live, drawing points as other threads insert them.</li>
  * </ul>
  *
  * @author Don Robert Pornaras
@@ -18,13 +40,23 @@ import javax.swing.*;
  * @since 2018-12-07
  */
 public class KDTreeVisualizer extends JPanel {
-    private KDTree kdTree;
+    private KDTree kdTree; // null when the visualizer follows a live tree, see tree()
+    private final ConcurrentKDTree liveTree; // null unless the visualizer follows inserts live
     private double plottingMinXValueRaw;
     private double plottingMinYValueRaw;
     private double plottingMaxXValueRaw;
     private double plottingMaxYValueRaw;
     private double internalBufferRange;
 
+    // plotting range chosen in the ctor, restored when the view is reset
+    private double initialMinXValueRaw;
+    private double initialMinYValueRaw;
+    private double initialMaxXValueRaw;
+    private double initialMaxYValueRaw;
+    private long viewVersion; // changes on every pan, zoom or change of level of detail
+    private static final double ZOOM_STEP = 1.1;
+    private static final int DEFAULT_TILE_SIZE = 1024;
+
     private int width;
     private int height;
     private int padding;
@@ -44,15 +76,47 @@ public class KDTreeVisualizer extends JPanel {
 
     private static final Stroke GRAPH_STROKE = new BasicStroke(2f);
     private int pointWidth;
+    private BufferedImage pointSprite; // one antialiased point, with a pixel of margin on each side
     private int cntYDivisions;
     private int cntXDivisions;
 
+    // render model of the visible nodes in drawable coordinates,
+    // rebuilt only when the tree, the panel size or the viewport changes
+    private final RenderModel model = new RenderModel();
+
+    // level of detail: subtrees denser than this are drawn as one shaded cell instead of point by point
+    private double densityThreshold = 1.0; // points per pixel
+    private static final double MIN_HYPERPLANE_CELL_PIXELS = 2.0;
+    private long modelModificationCount = -1;
+    private long modelViewVersion = -1;
+    private int modelWidth = -1;
+    private int modelHeight = -1;
+
+    // live mode: points inserted since the last frame, and the snapshot the render model is in step with
+    private final Queue<LiveInsert> liveInserts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger liveInsertCount = new AtomicInteger(); // size of the queue, which is slow to count
+    private volatile boolean liveDisplayed; // inserts are only queued while the panel is displayed
+    private volatile boolean liveInsertsDropped; // inserts were not queued, so the view must be gathered again
+    private Timer liveTimer;
+    private long liveVersion; // changes whenever the live view must be gathered again from scratch
+    private long liveModificationCount;
+    private long liveRebuildCount;
+    private int livePointsAtFullGather;
+    private static final int DEFAULT_FRAMES_PER_SECOND = 30;
+    private static final int MAX_LIVE_INSERTS = 1 << 16;
+
+    // hyperplanes and points pre-drawn at device resolution, so a repaint is a single image copy
+    private BufferedImage treeLayer;
+    private boolean treeLayerStale = true;
+    private double treeLayerScaleX;
+    private double treeLayerScaleY;
+
     /**
      * Ctor to initialize visualizer for a given KDTree
      * @param kdTree the KDTree to visualize
      */
     public KDTreeVisualizer(KDTree kdTree) {
-        this.kdTree = kdTree;
+        this(kdTree, null);
 
         internalBufferRange = 0.2; // percentage of original range of KDTree
 
@@ -89,6 +153,56 @@ public class KDTreeVisualizer extends JPanel {
             e.printMsg();
         }
 
+        initialMinXValueRaw = plottingMinXValueRaw;
+        initialMinYValueRaw = plottingMinYValueRaw;
+        initialMaxXValueRaw = plottingMaxXValueRaw;
+        initialMaxYValueRaw = plottingMaxYValueRaw;
+    }
+
+    /**
+     * Ctor to initialize a live visualizer that follows a tree while other threads insert into it
+     * <p>
+     *     Inserted points and their hyperplanes are gathered as they arrive and drawn onto the
+     *     cached tree layer at most {@link #getMaxFramesPerSecond()} times per second, so the
+     *     inserting threads never wait for painting. The whole view is gathered again only when
+     *     it is panned, zoomed or resized, or when the tree was changed other than by inserts.
+     * </p>
+     * <b>NOTE:</b> the visualizer becomes the insertion listener of the tree
+     * @param liveTree the tree to follow
+     * @param minX smallest x-coordinate shown
+     * @param minY smallest y-coordinate shown
+     * @param maxX largest x-coordinate shown
+     * @param maxY largest y-coordinate shown
+     * @throws InvalidInitializationException if the region is empty
+     */
+    public KDTreeVisualizer(ConcurrentKDTree liveTree, double minX, double minY, double maxX, double maxY)
+            throws InvalidInitializationException {
+        this(null, liveTree);
+
+        setViewport(minX, minY, maxX, maxY);
+        initialMinXValueRaw = minX;
+        initialMinYValueRaw = minY;
+        initialMaxXValueRaw = maxX;
+        initialMaxYValueRaw = maxY;
+
+        liveTimer = new Timer(1000 / DEFAULT_FRAMES_PER_SECOND, e -> applyLiveInserts());
+        liveTree.setInsertionListener(this::queueLiveInsert);
+    }
+
+    /**
+     * Ctor for the settings shared by static and live visualizers
+     * @param kdTree the KDTree to visualize, null when the visualizer is live
+     * @param liveTree the thread-safe tree to follow when the visualizer is live, null otherwise
+     */
+    private KDTreeVisualizer(KDTree kdTree, ConcurrentKDTree liveTree) {
+        this.kdTree = kdTree;
+        this.liveTree = liveTree;
+
+        ViewportMouseHandler mouseHandler = new ViewportMouseHandler();
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+        addMouseWheelListener(mouseHandler);
+
         this.width = 1080;
         this.height = 720;
         this.padding = 40;
@@ -109,6 +223,13 @@ public class KDTreeVisualizer extends JPanel {
         this.pointWidth = 10;
         this.cntYDivisions = 10;
         this.cntXDivisions = 10;
+
+        this.pointSprite = new BufferedImage(pointWidth + 2, pointWidth + 2, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D spriteGraphics = pointSprite.createGraphics();
+        spriteGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        spriteGraphics.setColor(pointColor);
+        spriteGraphics.fillOval(1, 1, pointWidth, pointWidth);
+        spriteGraphics.dispose();
     }
 
     /**
@@ -121,21 +242,83 @@ public class KDTreeVisualizer extends JPanel {
         Graphics2D g2 = (Graphics2D) g;
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        double xRange = plottingMaxXValueRaw - plottingMinXValueRaw;
-        double xScale = ((double) getWidth() - 2.0 * (double) padding - (double) labelPadding) / (xRange);
-        double yRange = plottingMaxYValueRaw - plottingMinYValueRaw;
-        double yScale = ((double) getHeight() - 2.0 * (double) padding - (double) labelPadding) / (yRange);
+        drawEmptyGraph(g2, getWidth(), getHeight());
 
-        drawEmptyGraph(g2);
+        // Get coordinates to graph, reusing them while the tree and panel size are unchanged
+        updateRenderModel();
+
+        // Draw Hyperplanes (as line for 2D representation) and Points from the cached layer
+        updateTreeLayer(g2);
+        g2.drawImage(treeLayer, 0, 0, getWidth(), getHeight(), null);
+    }
+
+    /**
+     * Rebuild the points and hyperplanes in drawable coordinates if the tree was modified,
+     * the panel was resized or the viewport moved since they were last built
+     */
+    private void updateRenderModel() {
+        // a live view draws inserts as they arrive, the tree version only changes when that is not enough
+        long modificationCount = liveTree == null ? kdTree.getModificationCount() : liveVersion;
+        if (modificationCount == modelModificationCount && viewVersion == modelViewVersion
+                && getWidth() == modelWidth && getHeight() == modelHeight)
+            return;
+
+        if (liveTree == null) {
+            collectVisible(model, kdTree, getWidth(), getHeight());
+        } else {
+            KDTree snapshot = liveTree.getSnapshot();
+            collectVisible(model, snapshot, getWidth(), getHeight());
+            // inserts queued up to this snapshot are already gathered, and are skipped once drained
+            liveModificationCount = snapshot.getModificationCount();
+            liveRebuildCount = snapshot.getRebuildCount();
+            livePointsAtFullGather = model.pointCount;
+        }
 
-        // Get list of coordinates to graph
-        ArrayList<Point> graphPoints = collectPoints(xScale, yScale);
+        modelModificationCount = modificationCount;
+        modelViewVersion = viewVersion;
+        modelWidth = getWidth();
+        modelHeight = getHeight();
+        treeLayerStale = true;
+    }
 
-        // Draw Hyperplanes (as line for 2D representation
-        drawHyperplanes(g2, graphPoints, xScale, yScale);
+    /**
+     * Drop the cached render model and tree layer, so the next paint gathers and draws the whole tree again
+     */
+    void invalidateRenderCache() {
+        modelModificationCount = -1;
+        treeLayerStale = true;
+    }
 
-        // Draw Points
-        drawPoints(g2, graphPoints);
+    /**
+     * Redraw the hyperplanes and points into the cached layer if the render model
+     * changed or the panel moved to a screen with a different pixel scale
+     * @param g2 Graphics2D object the layer will be drawn to
+     */
+    private void updateTreeLayer(Graphics2D g2) {
+        AffineTransform deviceTransform = g2.getTransform();
+        double scaleX = deviceTransform.getScaleX();
+        double scaleY = deviceTransform.getScaleY();
+        if (!treeLayerStale && scaleX == treeLayerScaleX && scaleY == treeLayerScaleY)
+            return;
+
+        int layerWidth = Math.max(1, (int) Math.ceil(getWidth() * scaleX));
+        int layerHeight = Math.max(1, (int) Math.ceil(getHeight() * scaleY));
+        if (treeLayer == null || treeLayer.getWidth() != layerWidth || treeLayer.getHeight() != layerHeight)
+            treeLayer = new BufferedImage(layerWidth, layerHeight, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D layerGraphics = treeLayer.createGraphics();
+        layerGraphics.setComposite(AlphaComposite.Clear);
+        layerGraphics.fillRect(0, 0, layerWidth, layerHeight);
+        layerGraphics.setComposite(AlphaComposite.SrcOver);
+        layerGraphics.scale(scaleX, scaleY);
+        layerGraphics.clipRect(padding + labelPadding, padding, getWidth() - totalPadding, getHeight() - totalPadding);
+        layerGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        drawTree(layerGraphics, model);
+        layerGraphics.dispose();
+
+        treeLayerStale = false;
+        treeLayerScaleX = scaleX;
+        treeLayerScaleY = scaleY;
     }
 
     ///////////////////////////////////////////////////
@@ -145,55 +328,63 @@ public class KDTreeVisualizer extends JPanel {
     /**
      * Draw an empty graph with title and labeled axes
      * @param g2 Graphics2D object
+     * @param canvasWidth width of the whole drawing
+     * @param canvasHeight height of the whole drawing
      */
-    private void drawEmptyGraph(Graphics2D g2) {
+    private void drawEmptyGraph(Graphics2D g2, int canvasWidth, int canvasHeight) {
         // Draw background
-        drawBackground(g2);
+        drawBackground(g2, canvasWidth, canvasHeight);
 
         // Draw title
-        drawTitle(g2);
+        drawTitle(g2, canvasWidth, canvasHeight);
 
         // Axes titles
-        drawAxesTitles(g2);
+        drawAxesTitles(g2, canvasWidth, canvasHeight);
 
         // Draw the Axes and Grid
-        drawYAxisGridAndMarkers(g2);
-        drawXAxisGridAndMarkers(g2);
+        drawYAxisGridAndMarkers(g2, canvasWidth, canvasHeight);
+        drawXAxisGridAndMarkers(g2, canvasWidth, canvasHeight);
 
         // Solid axes lines
-        drawSolidAxesLines(g2);
+        drawSolidAxesLines(g2, canvasWidth, canvasHeight);
     }
 
     /**
      * Draw background of the graph
      * @param g2 Graphics2D object
+     * @param canvasWidth width of the whole drawing
+     * @param canvasHeight height of the whole drawing
      */
-    private void drawBackground(Graphics2D g2) {
+    private void drawBackground(Graphics2D g2, int canvasWidth, int canvasHeight) {
         g2.setColor(backgroundColor);
         g2.fillRect(padding + labelPadding, padding,
-                getWidth() - totalPadding,
-                getHeight() - totalPadding);
+                canvasWidth - totalPadding,
+                canvasHeight - totalPadding);
     }
 
     /**
      * Draw the graph title
      * @param g2 Graphics2D object
+     * @param canvasWidth width of the whole drawing
+     * @param canvasHeight height of the whole drawing
      */
-    private void drawTitle(Graphics2D g2) {
+    private void drawTitle(Graphics2D g2, int canvasWidth, int canvasHeight) {
         g2.setColor(titleColor);
         FontMetrics titleFontMetrics = g2.getFontMetrics(titleFont);
         g2.setFont(titleFont);
-        String title = "Visualized KDTree of Size " + kdTree.getSize();
+        String title = "Visualized KDTree of Size " + tree().getSize();
         g2.drawString(title,
-                (getWidth()/ 2) - (titleFontMetrics.stringWidth(title) / 2) + (labelPadding / 2),
+                (canvasWidth / 2) - (titleFontMetrics.stringWidth(title) / 2) + (labelPadding / 2),
                 padding / 2);
     }
 
     /**
      * Draw axes titles
      * @param g2 Graphics2D object
+     * @param canvasWidth width of the whole drawing
+     * @param canvasHeight height of the whole drawing
      */
-    private void drawAxesTitles(Graphics2D g2) {
+    private void drawAxesTitles(Graphics2D g2, int canvasWidth, int canvasHeight) {
         FontMetrics axisFontMetrics = g2.getFontMetrics(axesTitleFont);
         g2.setFont(axesTitleFont);
 
@@ -201,14 +392,14 @@ public class KDTreeVisualizer extends JPanel {
         g2.rotate((-1)*Math.PI / 2);
         String yAxisLabel = "Y-Coordinates [KDTree Units]";
         g2.drawString(yAxisLabel,
-                (-getHeight() / 2) - (axisFontMetrics.stringWidth(yAxisLabel) / 2) + (labelPadding / 2),
+                (-canvasHeight / 2) - (axisFontMetrics.stringWidth(yAxisLabel) / 2) + (labelPadding / 2),
                 padding / 2);
         g2.setTransform(originalState);
 
         String xAxisLabel = "X-Coordinates [KDTree Units]";
         g2.drawString(xAxisLabel,
-                (getWidth() / 2) - (axisFontMetrics.stringWidth(xAxisLabel) / 2) + (labelPadding / 2),
-                getHeight() - padding / 2);
+                (canvasWidth / 2) - (axisFontMetrics.stringWidth(xAxisLabel) / 2) + (labelPadding / 2),
+                canvasHeight - padding / 2);
     }
 
     /**
@@ -217,17 +408,19 @@ public class KDTreeVisualizer extends JPanel {
      * <b>NOTE:</b> Will default to range noted in ctor if no nodes are present in the KDTree
      *
      * @param g2 Graphics2D object
+     * @param canvasWidth width of the whole drawing
+     * @param canvasHeight height of the whole drawing
      */
-    private void drawYAxisGridAndMarkers(Graphics2D g2) {
+    private void drawYAxisGridAndMarkers(Graphics2D g2, int canvasWidth, int canvasHeight) {
         for (int i = 0; i < cntYDivisions + 1; i++) {
             int x0 = padding + labelPadding;
-            int y0 = getHeight() - ((i * (getHeight() - totalPadding))
+            int y0 = canvasHeight - ((i * (canvasHeight - totalPadding))
                     / cntYDivisions + padding + labelPadding);
             int x1 = pointWidth + padding + labelPadding;
             int y1 = y0;
 
             g2.setColor(gridColor);
-            g2.drawLine(padding + labelPadding + 1 + pointWidth, y0, getWidth() - padding, y1);
+            g2.drawLine(padding + labelPadding + 1 + pointWidth, y0, canvasWidth - padding, y1);
 
             g2.setColor(axisLabelColor);
             String yMarker = ((int) ((plottingMinYValueRaw + (plottingMaxYValueRaw
@@ -246,17 +439,19 @@ public class KDTreeVisualizer extends JPanel {
      * <b>NOTE:</b> Will default to range noted in ctor if no nodes are present in the KDTree
      *
      * @param g2 Graphics2D object
+     * @param canvasWidth width of the whole drawing
+     * @param canvasHeight height of the whole drawing
      */
-    private void drawXAxisGridAndMarkers(Graphics2D g2) {
+    private void drawXAxisGridAndMarkers(Graphics2D g2, int canvasWidth, int canvasHeight) {
         for (int i = 0; i < cntXDivisions + 1; i++) {
-            int x0 = ((i * (getWidth() - totalPadding))
+            int x0 = ((i * (canvasWidth - totalPadding))
                     / cntXDivisions + padding + labelPadding);
-            int y0 = getHeight() - padding - labelPadding;
+            int y0 = canvasHeight - padding - labelPadding;
             int x1 = x0;
             int y1 = y0 - pointWidth;
 
             g2.setColor(gridColor);
-            g2.drawLine(x0, getHeight() - padding - labelPadding - 1 - pointWidth, x1, padding);
+            g2.drawLine(x0, canvasHeight - padding - labelPadding - 1 - pointWidth, x1, padding);
 
             g2.setColor(axisLabelColor);
             String xMarker = ((int) ((plottingMinXValueRaw + (plottingMaxXValueRaw
@@ -272,82 +467,351 @@ public class KDTreeVisualizer extends JPanel {
     /**
      * Draw solid lines to represent axes
      * @param g2 Graphics2D object
+     * @param canvasWidth width of the whole drawing
+     * @param canvasHeight height of the whole drawing
      */
-    private void drawSolidAxesLines(Graphics2D g2) {
+    private void drawSolidAxesLines(Graphics2D g2, int canvasWidth, int canvasHeight) {
         g2.setColor(axesLinesColor);
-        g2.drawLine(padding + labelPadding, getHeight() - padding - labelPadding,
+        g2.drawLine(padding + labelPadding, canvasHeight - padding - labelPadding,
                 padding + labelPadding, padding);
-        g2.drawLine(padding + labelPadding, getHeight() - padding - labelPadding,
-                getWidth() - padding, getHeight() - padding - labelPadding);
+        g2.drawLine(padding + labelPadding, canvasHeight - padding - labelPadding,
+                canvasWidth - padding, canvasHeight - padding - labelPadding);
     }
 
     /**
-     * Gather points in graph in order, in drawable coordinates
-     * @param xScale conversion from raw x-coordinates to drawable x-coordinates
-     * @param yScale conversion from raw y-coordinates to drawable y-coordinates
-     * @return ArrayList of graph points to be drawn
+     * Gather the points and hyperplanes of the nodes visible in the viewport, in drawable coordinates
+     * <p>
+     *     Walks the tree from the root, carrying the bounds of the cell each node splits.
+     *     A node's hyperplane spans its cell along the dimensions it does not split on, and
+     *     every point and hyperplane of a subtree lies inside the cell of its root, so subtrees
+     *     whose cell misses the viewport are skipped. The work therefore grows with the number
+     *     of visible nodes rather than with the size of the tree.
+     * </p>
+     * <p>
+     *     Level of detail bounds the work on large trees: a subtree whose points are denser than
+     *     the density threshold is gathered as one density cell from its live count and bounding
+     *     box, and hyperplanes are no longer gathered below a cell smaller than a couple of pixels.
+     * </p>
+     * @param model receives the points, hyperplanes and density cells
+     * @param tree the tree to gather, which must not change meanwhile
+     * @param canvasWidth width of the whole drawing
+     * @param canvasHeight height of the whole drawing
      */
-    private ArrayList<Point> collectPoints(double xScale, double yScale) {
-        ArrayList<Point> graphPoints = new ArrayList<>();
+    private void collectVisible(RenderModel model, KDTree tree, int canvasWidth, int canvasHeight) {
+        model.clear();
+        double xScale = getXScale(canvasWidth);
+        double yScale = getYScale(canvasHeight);
+        KDNode root = tree.getRoot();
+        if (root == null || root.getLiveCount() == 0)
+            return;
+
+        // points just outside the viewport still show part of their oval
+        double viewMinX = plottingMinXValueRaw - pointWidth / xScale;
+        double viewMaxX = plottingMaxXValueRaw + pointWidth / xScale;
+        double viewMinY = plottingMinYValueRaw - pointWidth / yScale;
+        double viewMaxY = plottingMaxYValueRaw + pointWidth / yScale;
+
+        // explicit stacks so degenerate trees cannot overflow the call stack
+        KDNode[] stack = new KDNode[64];
+        int[] depths = new int[64];
+        boolean[] pointsDrawn = new boolean[64]; // points of the subtree are already in a density cell
+        double[] cells = new double[4 * 64]; // min x, max x, min y, max y of each cell
+        stack[0] = root;
+        cells[0] = Double.NEGATIVE_INFINITY;
+        cells[1] = Double.POSITIVE_INFINITY;
+        cells[2] = Double.NEGATIVE_INFINITY;
+        cells[3] = Double.POSITIVE_INFINITY;
+        int top = 1;
+
+        while (top > 0) {
+            top--;
+            KDNode current = stack[top];
+            stack[top] = null;
+            int depth = depths[top];
+            boolean pointsDone = pointsDrawn[top];
+            double minX = cells[4 * top];
+            double maxX = cells[4 * top + 1];
+            double minY = cells[4 * top + 2];
+            double maxY = cells[4 * top + 3];
+
+            if (current.getLiveCount() == 0
+                    || maxX < viewMinX || minX > viewMaxX || maxY < viewMinY || minY > viewMaxY)
+                continue;
+
+            // hyperplanes of cells narrower than a couple of pixels in both directions cannot be told apart
+            double cellPixelsX = (Math.min(maxX, viewMaxX) - Math.max(minX, viewMinX)) * xScale;
+            double cellPixelsY = (Math.min(maxY, viewMaxY) - Math.max(minY, viewMinY)) * yScale;
+            boolean linesVisible = cellPixelsX >= MIN_HYPERPLANE_CELL_PIXELS
+                    || cellPixelsY >= MIN_HYPERPLANE_CELL_PIXELS;
+
+            if (!pointsDone && current.getLiveCount() > 1)
+                pointsDone = collectDensityCell(model, current, xScale, yScale, canvasHeight);
+            if (pointsDone && !linesVisible)
+                continue;
+
+            int splitDimension = depth % tree.getK();
+            double x = current.getCoordinate(0);
+            double y = current.getCoordinate(1);
+
+            if (!current.isDeleted()) {
+                if (!pointsDone && x >= viewMinX && x <= viewMaxX && y >= viewMinY && y <= viewMaxY)
+                    model.addPoint(transformXCoordinate(x, xScale), transformYCoordinate(y, yScale, canvasHeight));
+
+                if (linesVisible)
+                    collectHyperplane(model, splitDimension, x, y, minX, maxX, minY, maxY,
+                            xScale, yScale, canvasHeight);
+            }
+
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                depths = Arrays.copyOf(depths, 2 * depths.length);
+                pointsDrawn = Arrays.copyOf(pointsDrawn, 2 * pointsDrawn.length);
+                cells = Arrays.copyOf(cells, 2 * cells.length);
+            }
 
-        for (int i = 0; i < kdTree.getSize(); i++) {
-            int currentXCoordinate = kdTree.getInsertionOrder().get(i).getCoordinates().get(0);
-            int currentYCoordinate = kdTree.getInsertionOrder().get(i).getCoordinates().get(1);
+            KDNode left = current.getLeftChild();
+            if (left != null) {
+                stack[top] = left;
+                depths[top] = depth + 1;
+                pointsDrawn[top] = pointsDone;
+                cells[4 * top] = minX;
+                cells[4 * top + 1] = splitDimension == 0 ? x : maxX;
+                cells[4 * top + 2] = minY;
+                cells[4 * top + 3] = splitDimension == 1 ? y : maxY;
+                top++;
+            }
 
-            int x = transformXCoordinate(currentXCoordinate, xScale);
-            int y = transformYCoordinate(currentYCoordinate, yScale);
-            graphPoints.add(new Point(x, y));
+            KDNode right = current.getRightChild();
+            if (right != null) {
+                stack[top] = right;
+                depths[top] = depth + 1;
+                pointsDrawn[top] = pointsDone;
+                cells[4 * top] = splitDimension == 0 ? x : minX;
+                cells[4 * top + 1] = maxX;
+                cells[4 * top + 2] = splitDimension == 1 ? y : minY;
+                cells[4 * top + 3] = maxY;
+                top++;
+            }
         }
+    }
 
-        return graphPoints;
+    /**
+     * Gather the hyperplane of a node, clipped to the viewport
+     * @param model receives the hyperplane
+     * @param splitDimension dimension the node splits on
+     * @param x raw x-coordinate of the node
+     * @param y raw y-coordinate of the node
+     * @param minX smallest x-coordinate of the cell the node splits
+     * @param maxX largest x-coordinate of the cell the node splits
+     * @param minY smallest y-coordinate of the cell the node splits
+     * @param maxY largest y-coordinate of the cell the node splits
+     * @param xScale conversion from raw x-coordinates to drawable x-coordinates
+     * @param yScale conversion from raw y-coordinates to drawable y-coordinates
+     * @param canvasHeight height of the whole drawing
+     */
+    private void collectHyperplane(RenderModel model, int splitDimension, double x, double y,
+                                   double minX, double maxX, double minY, double maxY,
+                                   double xScale, double yScale, int canvasHeight) {
+        double x1 = splitDimension == 0 ? x : Math.max(minX, plottingMinXValueRaw);
+        double x2 = splitDimension == 0 ? x : Math.min(maxX, plottingMaxXValueRaw);
+        double y1 = splitDimension == 1 ? y : Math.min(maxY, plottingMaxYValueRaw);
+        double y2 = splitDimension == 1 ? y : Math.max(minY, plottingMinYValueRaw);
+        if (x1 <= x2 && y2 <= y1 && x1 <= plottingMaxXValueRaw && x2 >= plottingMinXValueRaw
+                && y2 <= plottingMaxYValueRaw && y1 >= plottingMinYValueRaw)
+            model.addSegment(transformXCoordinate(x1, xScale), transformYCoordinate(y1, yScale, canvasHeight),
+                    transformXCoordinate(x2, xScale), transformYCoordinate(y2, yScale, canvasHeight));
     }
 
     /**
-     * Draw hyperplanes based on order of insertion into KDTree
-     * @param g2 Graphics2D object
-     * @param graphPoints ArrayList of graph points in insertion order into KDTree
+     * Gather a subtree as a single density cell if its points are denser than the threshold.
+     * The cell covers the bounding box of the subtree, widened by one point on each side.
+     * @param model receives the density cell
+     * @param current root of the subtree
      * @param xScale conversion from raw x-coordinates to drawable x-coordinates
      * @param yScale conversion from raw y-coordinates to drawable y-coordinates
+     * @param canvasHeight height of the whole drawing
+     * @return true if the subtree was gathered as a density cell
      */
-    private void drawHyperplanes(Graphics2D g2, ArrayList<Point> graphPoints, double xScale, double yScale) {
-        g2.setColor(lineColor);
-        g2.setStroke(GRAPH_STROKE);
-        for (int i = 0; i < graphPoints.size(); i++) {
-            KDNode currentNode = kdTree.getInsertionOrder().get(i);
+    private boolean collectDensityCell(RenderModel model, KDNode current, double xScale, double yScale,
+                                       int canvasHeight) {
+        int x1 = transformXCoordinate(current.getMinBound(0), xScale) - pointWidth / 2;
+        int x2 = transformXCoordinate(current.getMaxBound(0), xScale) + pointWidth / 2;
+        int y1 = transformYCoordinate(current.getMaxBound(1), yScale, canvasHeight) - pointWidth / 2;
+        int y2 = transformYCoordinate(current.getMinBound(1), yScale, canvasHeight) + pointWidth / 2;
+        double density = current.getLiveCount() / ((double) (x2 - x1) * (y2 - y1));
+        if (density <= densityThreshold)
+            return false;
+
+        model.addDensityCell(x1, y1, x2 - x1, y2 - y1, density);
+        return true;
+    }
 
-            // values directly from KDTree
-            double x1Raw = findClosestLeftX(currentNode);
-            double x2Raw = findClosestRightX(currentNode);
-            double y1Raw = findClosestAboveY(currentNode);
-            double y2Raw = findClosestBelowY(currentNode);
+    /**
+     * Draw the hyperplanes, density cells and points of a render model
+     * that fall inside the clip of the graphics
+     * @param g2 Graphics2D object, clipped to the plotting area
+     * @param model the points, hyperplanes and density cells to draw
+     */
+    private void drawTree(Graphics2D g2, RenderModel model) {
+        Rectangle clip = g2.getClipBounds();
+        drawHyperplanes(g2, model, clip);
+        drawDensityCells(g2, model, clip);
+        drawPoints(g2, model, clip);
+    }
 
-            // transformation onto drawing plane
-            int x1 = transformXCoordinate(x1Raw, xScale);
-            int y1 = transformYCoordinate(y1Raw, yScale);
-            int x2 = transformXCoordinate(x2Raw, xScale);
-            int y2 = transformYCoordinate(y2Raw, yScale);
+    /**
+     * Draw hyperplanes of the visible nodes
+     * @param g2 Graphics2D object
+     * @param model the hyperplanes to draw
+     * @param clip hyperplanes entirely outside this region are skipped
+     */
+    private void drawHyperplanes(Graphics2D g2, RenderModel model, Rectangle clip) {
+        g2.setColor(lineColor);
+        g2.setStroke(GRAPH_STROKE);
+        int[] segments = model.segments;
+        for (int i = 0; i < model.segmentCount; i++) {
+            int x1 = segments[4 * i];
+            int y1 = segments[4 * i + 1];
+            int x2 = segments[4 * i + 2];
+            int y2 = segments[4 * i + 3];
+            // hyperplanes are axis-aligned, so their extents are those of their end points
+            if (Math.max(x1, x2) + 2 < clip.x || Math.min(x1, x2) - 2 > clip.x + clip.width
+                    || Math.max(y1, y2) + 2 < clip.y || Math.min(y1, y2) - 2 > clip.y + clip.height)
+                continue;
 
             g2.drawLine(x1, y1, x2, y2);
         }
     }
 
+    /**
+     * Draw subtrees gathered as density cells, shaded from half to full opacity
+     * of the point color by their density on a logarithmic scale
+     * @param g2 Graphics2D object
+     * @param model the density cells to draw
+     * @param clip density cells entirely outside this region are skipped
+     */
+    private void drawDensityCells(Graphics2D g2, RenderModel model, Rectangle clip) {
+        int[] cells = model.densityCells;
+        double logMaxDensity = Math.log1p(model.maxDensity / densityThreshold);
+        for (int i = 0; i < model.densityCellCount; i++) {
+            if (!clip.intersects(cells[4 * i], cells[4 * i + 1], cells[4 * i + 2], cells[4 * i + 3]))
+                continue;
+
+            double shade = logMaxDensity > 0 ? Math.log1p(model.densities[i] / densityThreshold) / logMaxDensity : 1;
+            int alpha = (int) (127 + 128 * Math.min(1, shade));
+            g2.setColor(new Color(pointColor.getRed(), pointColor.getGreen(), pointColor.getBlue(), alpha));
+            g2.fillRect(cells[4 * i], cells[4 * i + 1], cells[4 * i + 2], cells[4 * i + 3]);
+        }
+    }
+
     /**
      * Draw points from KDTree
      * @param g2 Graphics2D object
-     * @param graphPoints points from the KDTree
+     * @param model the points to draw
+     * @param clip points entirely outside this region are skipped
      */
-    private void drawPoints(Graphics2D g2, ArrayList<Point> graphPoints) {
+    private void drawPoints(Graphics2D g2, RenderModel model, Rectangle clip) {
         g2.setColor(pointColor);
-        for (Point point : graphPoints) {
-            int x = point.x - pointWidth / 2;
-            int y = point.y - pointWidth / 2;
+        // without scaling every point covers the same pixels, so one pre-drawn point is stamped instead
+        boolean stamp = (g2.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+        for (int i = 0; i < model.pointCount; i++) {
+            int x = model.pointXs[i] - pointWidth / 2;
+            int y = model.pointYs[i] - pointWidth / 2;
             int ovalWidth = pointWidth;
             int ovalHeight = pointWidth;
+            if (x + ovalWidth < clip.x || x > clip.x + clip.width
+                    || y + ovalHeight < clip.y || y > clip.y + clip.height)
+                continue;
+
+            if (stamp)
+                g2.drawImage(pointSprite, x - 1, y - 1, null);
+            else
+                g2.fillOval(x, y, ovalWidth, ovalHeight);
+        }
+    }
 
-            g2.fillOval(x, y, ovalWidth, ovalHeight);
+    /**
+     * Points, hyperplanes and density cells of the visible nodes in drawable coordinates
+     */
+    private static class RenderModel {
+        int[] pointXs;
+        int[] pointYs;
+        int[] segments; // x1, y1, x2, y2 of each hyperplane
+        int[] densityCells; // x, y, width, height of each aggregated subtree
+        double[] densities; // points per pixel of each aggregated subtree
+        int pointCount;
+        int segmentCount;
+        int densityCellCount;
+        double maxDensity;
+
+        RenderModel() {
+            this(64);
+        }
+
+        /**
+         * Ctor given the room to reserve for each kind of element
+         * @param capacity points, hyperplanes and density cells held before the arrays grow, at least 1
+         */
+        RenderModel(int capacity) {
+            pointXs = new int[capacity];
+            pointYs = new int[capacity];
+            segments = new int[4 * capacity];
+            densityCells = new int[4 * capacity];
+            densities = new double[capacity];
+        }
+
+        void clear() {
+            pointCount = 0;
+            segmentCount = 0;
+            densityCellCount = 0;
+            maxDensity = 0;
+        }
+
+        void addPoint(int x, int y) {
+            if (pointCount == pointXs.length) {
+                pointXs = Arrays.copyOf(pointXs, 2 * pointCount);
+                pointYs = Arrays.copyOf(pointYs, 2 * pointCount);
+            }
+            pointXs[pointCount] = x;
+            pointYs[pointCount] = y;
+            pointCount++;
+        }
+
+        void addSegment(int x1, int y1, int x2, int y2) {
+            if (4 * segmentCount == segments.length)
+                segments = Arrays.copyOf(segments, 2 * segments.length);
+            int i = 4 * segmentCount++;
+            segments[i] = x1;
+            segments[i + 1] = y1;
+            segments[i + 2] = x2;
+            segments[i + 3] = y2;
+        }
+
+        void addDensityCell(int x, int y, int width, int height, double density) {
+            if (4 * densityCellCount == densityCells.length) {
+                densityCells = Arrays.copyOf(densityCells, 2 * densityCells.length);
+                densities = Arrays.copyOf(densities, 2 * densities.length);
+            }
+            int i = 4 * densityCellCount;
+            densityCells[i] = x;
+            densityCells[i + 1] = y;
+            densityCells[i + 2] = width;
+            densityCells[i + 3] = height;
+            densities[densityCellCount++] = density;
+            maxDensity = Math.max(maxDensity, density);
         }
     }
 
+    private double getXScale(int canvasWidth) {
+        double xRange = plottingMaxXValueRaw - plottingMinXValueRaw;
+        return ((double) canvasWidth - 2.0 * (double) padding - (double) labelPadding) / (xRange);
+    }
+
+    private double getYScale(int canvasHeight) {
+        double yRange = plottingMaxYValueRaw - plottingMinYValueRaw;
+        return ((double) canvasHeight - 2.0 * (double) padding - (double) labelPadding) / (yRange);
+    }
+
     /**
      * Convert raw unit x-coordinate in KDTree to graphical x-position
      * @param xCoordinate raw unit x-coordinate from KDTree
@@ -363,120 +827,573 @@ public class KDTreeVisualizer extends JPanel {
      * Convert raw unit y-coordinate in KDTree to graphical y-position
      * @param yCoordinate raw unit y-coordinate from KDTree
      * @param yScale proportional y-direction scale factor from raw unit to graphical representation
+     * @param canvasHeight height of the whole drawing
      * @return graphical y-position coordinate
      */
-    private int transformYCoordinate(double yCoordinate, double yScale) {
+    private int transformYCoordinate(double yCoordinate, double yScale, int canvasHeight) {
         double adjustedYCoord = yCoordinate - plottingMinYValueRaw;
-        return (int) ((getHeight() - padding - labelPadding) - yScale * adjustedYCoord);
+        return (int) ((canvasHeight - padding - labelPadding) - yScale * adjustedYCoord);
+    }
+
+    //////////////////////////////////
+    ///// Viewport Pan and Zoom /////
+    //////////////////////////////////
+
+    /**
+     * Show a region of the tree
+     * @param minX smallest x-coordinate shown
+     * @param minY smallest y-coordinate shown
+     * @param maxX largest x-coordinate shown
+     * @param maxY largest y-coordinate shown
+     * @throws InvalidInitializationException if the region is empty
+     */
+    public void setViewport(double minX, double minY, double maxX, double maxY)
+            throws InvalidInitializationException {
+        if (!(minX < maxX) || !(minY < maxY))
+            throw new InvalidInitializationException("Viewport from (" + minX + ", " + minY + ") to ("
+                    + maxX + ", " + maxY + ") must have a positive width and height");
+
+        plottingMinXValueRaw = minX;
+        plottingMinYValueRaw = minY;
+        plottingMaxXValueRaw = maxX;
+        plottingMaxYValueRaw = maxY;
+        viewVersion++;
+        repaint();
+    }
+
+    /**
+     * Show the whole tree again, as when the visualizer was created
+     */
+    public void resetViewport() {
+        plottingMinXValueRaw = initialMinXValueRaw;
+        plottingMinYValueRaw = initialMinYValueRaw;
+        plottingMaxXValueRaw = initialMaxXValueRaw;
+        plottingMaxYValueRaw = initialMaxYValueRaw;
+        viewVersion++;
+        repaint();
     }
-    ////////////////////////////////////////////////////////////////////
-    ///// Utility Methods for Drawing Lines in the Insertion Order /////
-    ////////////////////////////////////////////////////////////////////
+
+    public double getDensityThreshold() { return densityThreshold; }
 
     /**
-     * Find the largest x-coordinate to the left of a node
-     * @param node given node to examine
-     * @return the largest x-coordinate to the left of the input node
+     * Set the level of detail: subtrees with more points per pixel than the threshold
+     * are drawn as one shaded density cell instead of point by point
+     * @param densityThreshold points per pixel, infinity to always draw every point
+     * @throws InvalidInitializationException if the threshold is not positive
      */
-    private double findClosestLeftX(KDNode node) {
-        if (node.getDepth() % kdTree.getK() == 0)
-            return node.getCoordinates().get(0);
+    public void setDensityThreshold(double densityThreshold) throws InvalidInitializationException {
+        if (!(densityThreshold > 0))
+            throw new InvalidInitializationException("Density threshold of " + densityThreshold
+                    + " points per pixel must be positive");
+
+        this.densityThreshold = densityThreshold;
+        viewVersion++;
+        repaint();
+    }
+
+    public double getViewportMinX() { return plottingMinXValueRaw; }
+    public double getViewportMinY() { return plottingMinYValueRaw; }
+    public double getViewportMaxX() { return plottingMaxXValueRaw; }
+    public double getViewportMaxY() { return plottingMaxYValueRaw; }
 
-        // intialized to leftmost coordinate
-        double currentLargestX = plottingMinXValueRaw;
+    /**
+     * Scale the viewport around a fixed point
+     * @param factor ratio of the new range to the old range, below 1 zooms in
+     * @param centerX raw x-coordinate that stays in place
+     * @param centerY raw y-coordinate that stays in place
+     */
+    private void zoom(double factor, double centerX, double centerY) {
+        double minX = centerX - (centerX - plottingMinXValueRaw) * factor;
+        double maxX = centerX + (plottingMaxXValueRaw - centerX) * factor;
+        double minY = centerY - (centerY - plottingMinYValueRaw) * factor;
+        double maxY = centerY + (plottingMaxYValueRaw - centerY) * factor;
+
+        // stop before the range becomes too small to tell coordinates apart
+        if (maxX - minX < 1e-6 || maxY - minY < 1e-6)
+            return;
+
+        plottingMinXValueRaw = minX;
+        plottingMaxXValueRaw = maxX;
+        plottingMinYValueRaw = minY;
+        plottingMaxYValueRaw = maxY;
+        viewVersion++;
+        repaint();
+    }
+
+    /**
+     * Shift the viewport
+     * @param dxRaw shift of the x-range in raw units
+     * @param dyRaw shift of the y-range in raw units
+     */
+    private void pan(double dxRaw, double dyRaw) {
+        plottingMinXValueRaw += dxRaw;
+        plottingMaxXValueRaw += dxRaw;
+        plottingMinYValueRaw += dyRaw;
+        plottingMaxYValueRaw += dyRaw;
+        viewVersion++;
+        repaint();
+    }
 
-        KDNode current = new KDNode(node);
+    /**
+     * Pans on drag, zooms on the mouse wheel and resets the view on double-click
+     */
+    private class ViewportMouseHandler extends MouseAdapter {
+        private int lastX;
+        private int lastY;
+
+        @Override
+        public void mousePressed(MouseEvent e) {
+            lastX = e.getX();
+            lastY = e.getY();
+        }
 
-        while (current != null) {
-            if (current.getCoordinates().get(0) < node.getCoordinates().get(0))
-                if (current.getDepth() % kdTree.getK() == 0
-                        && current.getCoordinates().get(0) > currentLargestX)
-                    currentLargestX = current.getCoordinates().get(0);
+        @Override
+        public void mouseDragged(MouseEvent e) {
+            pan((lastX - e.getX()) / getXScale(getWidth()), (e.getY() - lastY) / getYScale(getHeight()));
+            lastX = e.getX();
+            lastY = e.getY();
+        }
 
-            current = current.getParent();
+        @Override
+        public void mouseWheelMoved(MouseWheelEvent e) {
+            double centerX = plottingMinXValueRaw + (e.getX() - padding - labelPadding) / getXScale(getWidth());
+            double centerY = plottingMinYValueRaw
+                    + (getHeight() - padding - labelPadding - e.getY()) / getYScale(getHeight());
+            zoom(Math.pow(ZOOM_STEP, e.getPreciseWheelRotation()), centerX, centerY);
         }
 
-        return currentLargestX;
+        @Override
+        public void mouseClicked(MouseEvent e) {
+            if (e.getClickCount() == 2)
+                resetViewport();
+        }
     }
 
+    ////////////////////////
+    ///// Live Inserts /////
+    ////////////////////////
+
     /**
-     * Find the smallest x-coordinate to the right of a node
-     * @param node given node to examine
-     * @return the smallest x-coordinate to the right of the input node
+     * Point inserted into a live tree, with the modification count of the tree right after the insert
      */
-    private double findClosestRightX(KDNode node) {
-        if (node.getDepth() % kdTree.getK() == 0)
-            return node.getCoordinates().get(0);
+    private static final class LiveInsert {
+        private final int[] point;
+        private final long modificationCount;
+
+        private LiveInsert(int[] point, long modificationCount) {
+            this.point = point;
+            this.modificationCount = modificationCount;
+        }
+    }
 
-        // initialized to rightmost coordinate
-        double currentSmallestX = plottingMaxXValueRaw;
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (liveTimer != null) {
+            liveDisplayed = true;
+            liveInsertsDropped = true; // nothing was queued while hidden
+            liveTimer.start();
+        }
+    }
 
-        KDNode current = new KDNode(node);
+    @Override
+    public void removeNotify() {
+        if (liveTimer != null) {
+            liveTimer.stop();
+            liveDisplayed = false;
+            liveInserts.clear();
+            liveInsertCount.set(0);
+        }
+        super.removeNotify();
+    }
 
-        while (current != null) {
-            if (current.getCoordinates().get(0) > node.getCoordinates().get(0))
-                if (current.getDepth() % kdTree.getK() == 0
-                        && current.getCoordinates().get(0) < currentSmallestX)
-                    currentSmallestX = current.getCoordinates().get(0);
+    /**
+     * Tree to draw, which for a live visualizer is the latest snapshot of the tree it follows
+     * @return a tree that does not change while it is drawn
+     */
+    private KDTree tree() {
+        return liveTree == null ? kdTree : liveTree.getSnapshot();
+    }
 
-            current = current.getParent();
+    /**
+     * Queue a copy of an inserted point for the next frame, run on the inserting thread by the live tree
+     * <p>
+     *     Nothing is queued while the panel is not displayed or once the queue is full, for
+     *     instance when frames fall behind a fast writer. The next frame then gathers the whole
+     *     view again instead.
+     * </p>
+     * @param node the inserted node, already in the latest snapshot of the tree
+     */
+    private void queueLiveInsert(KDNode node) {
+        if (!liveDisplayed || liveInsertCount.get() >= MAX_LIVE_INSERTS) {
+            liveInsertsDropped = true;
+            return;
         }
 
-        return currentSmallestX;
+        liveInserts.add(new LiveInsert(node.getPoint().clone(), liveTree.getModificationCount()));
+        liveInsertCount.incrementAndGet();
+    }
+
+    public int getMaxFramesPerSecond() {
+        return liveTimer == null ? 0 : 1000 / liveTimer.getDelay();
     }
 
     /**
-     * Find the smallest y-coordinate above a node
-     * @param node given node to examine
-     * @return the smallest y-coordinate above the input node
+     * Cap how often a live visualizer draws the points inserted since its last frame
+     * @param framesPerSecond frames per second, from 1 to 1000
+     * @throws InvalidInitializationException if the rate is out of range or the visualizer is not live
      */
-    private double findClosestAboveY(KDNode node) {
-        if (node.getDepth() % kdTree.getK() == 1)
-            return node.getCoordinates().get(1);
+    public void setMaxFramesPerSecond(int framesPerSecond) throws InvalidInitializationException {
+        if (liveTimer == null)
+            throw new InvalidInitializationException("Only a live visualizer has a frame rate");
+        if (framesPerSecond < 1 || framesPerSecond > 1000)
+            throw new InvalidInitializationException("Frame rate of " + framesPerSecond
+                    + " frames per second must be from 1 to 1000");
+
+        liveTimer.setDelay(1000 / framesPerSecond);
+    }
 
-        // initialized to topmost coordinate
-        double currentSmallestY = plottingMaxYValueRaw;
+    /**
+     * Draw the points inserted since the last frame, run on the event dispatch thread by the live timer
+     * <p>
+     *     The queued points already in the latest snapshot of the tree are drained, and each is
+     *     gathered with the cell found by walking down to it from the root of the snapshot. Only
+     *     those new points and hyperplanes are then drawn onto the cached tree layer. The view is
+     *     gathered again from scratch if the tree was changed other than by these inserts, if
+     *     inserts were dropped, or once the appended points outnumber those of the last full
+     *     gathering, so the level of detail catches up with dense regions. The tree is never
+     *     locked, so drawing does not hold up the inserting threads.
+     * </p>
+     */
+    private void applyLiveInserts() {
+        if (liveInsertsDropped) {
+            liveInsertsDropped = false;
+            liveVersion++;
+            repaint();
+        }
+        if (liveInserts.isEmpty())
+            return;
+        if (modelModificationCount != liveVersion || viewVersion != modelViewVersion
+                || getWidth() != modelWidth || getHeight() != modelHeight) {
+            repaint(); // the next paint gathers the whole view, including these inserts
+            return;
+        }
 
-        KDNode current = new KDNode(node);
+        KDTree snapshot = liveTree.getSnapshot();
+        RenderModel inserted = new RenderModel();
+        boolean stale = snapshot.getRebuildCount() != liveRebuildCount;
+        double xScale = getXScale(getWidth());
+        double yScale = getYScale(getHeight());
+        // inserts are queued in order, each once the snapshot holding it is published
+        for (LiveInsert insert = liveInserts.peek();
+             insert != null && insert.modificationCount <= snapshot.getModificationCount();
+             insert = liveInserts.peek()) {
+            liveInserts.poll();
+            liveInsertCount.decrementAndGet();
+            if (insert.modificationCount <= liveModificationCount)
+                continue; // already part of the last full gathering
+
+            stale |= insert.modificationCount != liveModificationCount + 1;
+            liveModificationCount = insert.modificationCount;
+            if (!stale)
+                collectInserted(inserted, snapshot, insert.point, xScale, yScale, getHeight());
+        }
 
-        while (current != null) {
-            if (current.getCoordinates().get(1) > node.getCoordinates().get(1))
-                if (current.getDepth() % kdTree.getK() == 1
-                        && current.getCoordinates().get(1) < currentSmallestY)
-                    currentSmallestY = current.getCoordinates().get(1);
+        if (stale || model.pointCount + inserted.pointCount > 2 * livePointsAtFullGather + 1024) {
+            liveVersion++;
+            repaint();
+            return;
+        }
 
-            current = current.getParent();
+        for (int i = 0; i < inserted.pointCount; i++)
+            model.addPoint(inserted.pointXs[i], inserted.pointYs[i]);
+        for (int i = 0; i < inserted.segmentCount; i++)
+            model.addSegment(inserted.segments[4 * i], inserted.segments[4 * i + 1],
+                    inserted.segments[4 * i + 2], inserted.segments[4 * i + 3]);
+
+        if (treeLayer != null && !treeLayerStale) {
+            Graphics2D layerGraphics = treeLayer.createGraphics();
+            layerGraphics.scale(treeLayerScaleX, treeLayerScaleY);
+            layerGraphics.clipRect(padding + labelPadding, padding, getWidth() - totalPadding, getHeight() - totalPadding);
+            layerGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            drawTree(layerGraphics, inserted);
+            layerGraphics.dispose();
         }
+        repaint();
+    }
 
-        return currentSmallestY;
+    /**
+     * Gather the point and hyperplane of a node inserted into a live tree
+     * @param model receives the point and hyperplane
+     * @param snapshot snapshot of the tree holding the node
+     * @param point coordinates of the inserted node
+     * @param xScale conversion from raw x-coordinates to drawable x-coordinates
+     * @param yScale conversion from raw y-coordinates to drawable y-coordinates
+     * @param canvasHeight height of the whole drawing
+     */
+    private void collectInserted(RenderModel model, KDTree snapshot, int[] point,
+                                 double xScale, double yScale, int canvasHeight) {
+        // the cell of a node is bounded by the split of each of its ancestors, the nearest being the tightest
+        double minX = Double.NEGATIVE_INFINITY;
+        double maxX = Double.POSITIVE_INFINITY;
+        double minY = Double.NEGATIVE_INFINITY;
+        double maxY = Double.POSITIVE_INFINITY;
+        int K = snapshot.getK();
+        KDNode node = snapshot.getRoot();
+        while (node != null && (node.isDeleted() || !Arrays.equals(node.getPoint(), point))) {
+            int splitDimension = node.getDepth() % K;
+            boolean left = point[splitDimension] < node.getCoordinate(splitDimension);
+            if (splitDimension == 0) {
+                if (left)
+                    maxX = Math.min(maxX, node.getCoordinate(0));
+                else
+                    minX = Math.max(minX, node.getCoordinate(0));
+            } else if (splitDimension == 1) {
+                if (left)
+                    maxY = Math.min(maxY, node.getCoordinate(1));
+                else
+                    minY = Math.max(minY, node.getCoordinate(1));
+            }
+            node = left ? node.getLeftChild() : node.getRightChild();
+        }
+        if (node == null)
+            return; // deleted again since
+
+        double x = node.getCoordinate(0);
+        double y = node.getCoordinate(1);
+        if (x >= plottingMinXValueRaw - pointWidth / xScale && x <= plottingMaxXValueRaw + pointWidth / xScale
+                && y >= plottingMinYValueRaw - pointWidth / yScale && y <= plottingMaxYValueRaw + pointWidth / yScale)
+            model.addPoint(transformXCoordinate(x, xScale), transformYCoordinate(y, yScale, canvasHeight));
+
+        double cellPixelsX = (Math.min(maxX, plottingMaxXValueRaw) - Math.max(minX, plottingMinXValueRaw)) * xScale;
+        double cellPixelsY = (Math.min(maxY, plottingMaxYValueRaw) - Math.max(minY, plottingMinYValueRaw)) * yScale;
+        if (cellPixelsX >= MIN_HYPERPLANE_CELL_PIXELS || cellPixelsY >= MIN_HYPERPLANE_CELL_PIXELS)
+            collectHyperplane(model, node.getDepth() % K, x, y, minX, maxX, minY, maxY, xScale, yScale, canvasHeight);
     }
 
+    //////////////////////////////
+    ///// Headless Rendering /////
+    //////////////////////////////
+
     /**
-     * Find the largest y-coordinate to the below of a node
-     * @param node given node to examine
-     * @return the largest y-coordinate below the input node
+     * Writes one rendered tile
      */
-    private double findClosestBelowY(KDNode node) {
-        if (node.getDepth() % kdTree.getK() == 1)
-            return node.getCoordinates().get(1);
+    private interface TileWriter {
+        void write(BufferedImage tile, int row, int column) throws IOException;
+    }
+
+    /**
+     * Render the graph, as the panel would show it at the given size, into a single PNG file
+     * <b>NOTE:</b> the whole image is held in memory, use {@link #writeTiles} for very large images
+     * @param file PNG file to write
+     * @param imageWidth width of the image in pixels
+     * @param imageHeight height of the image in pixels
+     * @throws IOException if the file cannot be written
+     * @throws InvalidInitializationException if the image is too small to hold the plotting area
+     */
+    public void writePng(Path file, int imageWidth, int imageHeight)
+            throws IOException, InvalidInitializationException {
+        BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+        renderTiles(imageWidth, imageHeight, DEFAULT_TILE_SIZE, (tile, row, column) ->
+                image.getRaster().setDataElements(column * DEFAULT_TILE_SIZE, row * DEFAULT_TILE_SIZE, tile.getRaster()));
+
+        if (!ImageIO.write(image, "png", file.toFile()))
+            throw new IOException("No PNG writer available for " + file);
+    }
 
-        // initialized to bottommost coordinate
-        double currentLargestY = plottingMinYValueRaw;
+    /**
+     * Render the graph, as the panel would show it at the given size, into a grid of PNG tiles
+     * named <code>tile-ROW-COLUMN.png</code>, so images too large for memory can be produced
+     * @param directory existing directory to write the tiles to
+     * @param imageWidth width of the whole image in pixels
+     * @param imageHeight height of the whole image in pixels
+     * @param tileSize width and height of each tile; tiles on the right and bottom edges may be smaller
+     * @return number of tiles written
+     * @throws IOException if a tile cannot be written
+     * @throws InvalidInitializationException if the image is too small or the tile size is less than 1
+     */
+    public int writeTiles(Path directory, int imageWidth, int imageHeight, int tileSize)
+            throws IOException, InvalidInitializationException {
+        if (tileSize < 1)
+            throw new InvalidInitializationException("Tile size of " + tileSize + " must be at least 1");
+
+        return renderTiles(imageWidth, imageHeight, tileSize, (tile, row, column) -> {
+            Path tileFile = directory.resolve("tile-" + row + "-" + column + ".png");
+            if (!ImageIO.write(tile, "png", tileFile.toFile()))
+                throw new IOException("No PNG writer available for " + tileFile);
+        });
+    }
 
-        KDNode current = new KDNode(node);
+    /**
+     * Render the graph of a KDTree into a single PNG file, without opening a window
+     * @param kdtree the input tree to render
+     * @param file PNG file to write
+     * @param imageWidth width of the image in pixels
+     * @param imageHeight height of the image in pixels
+     * @throws IOException if the file cannot be written
+     * @throws InvalidInitializationException if the image is too small to hold the plotting area
+     */
+    public static void writePng(KDTree kdtree, Path file, int imageWidth, int imageHeight)
+            throws IOException, InvalidInitializationException {
+        new KDTreeVisualizer(kdtree).writePng(file, imageWidth, imageHeight);
+    }
 
-        while (current != null) {
-            if (current.getCoordinates().get(1) < node.getCoordinates().get(1))
-                if (current.getDepth() % kdTree.getK() == 1
-                        && current.getCoordinates().get(1) > currentLargestY)
-                    currentLargestY = current.getCoordinates().get(1);
+    /**
+     * Render the graph at a given size as a grid of tiles, in parallel on a thread pool
+     * <p>
+     *     The visible nodes are gathered once for the whole image and sorted by the tiles they
+     *     overlap; each tile then draws the empty graph and only its own share of the render model.
+     * </p>
+     * <b>NOTE:</b> the tree must not be modified while the tiles are rendered
+     * @param imageWidth width of the whole image in pixels
+     * @param imageHeight height of the whole image in pixels
+     * @param tileSize width and height of each tile
+     * @param writer receives each finished tile, possibly from several threads at once
+     * @return number of tiles rendered
+     * @throws IOException if a tile cannot be written or rendering is interrupted
+     * @throws InvalidInitializationException if the image is too small to hold the plotting area
+     */
+    private int renderTiles(int imageWidth, int imageHeight, int tileSize, TileWriter writer)
+            throws IOException, InvalidInitializationException {
+        if (imageWidth <= totalPadding || imageHeight <= totalPadding)
+            throw new InvalidInitializationException("Image of " + imageWidth + "x" + imageHeight
+                    + " pixels must be larger than the padding of " + totalPadding + " pixels");
+
+        RenderModel imageModel = new RenderModel();
+        collectVisible(imageModel, tree(), imageWidth, imageHeight);
+
+        int rows = (imageHeight + tileSize - 1) / tileSize;
+        int columns = (imageWidth + tileSize - 1) / tileSize;
+        RenderModel[] tileModels = binByTile(imageModel, tileSize, rows, columns);
+        List<Callable<Void>> tasks = new ArrayList<>(rows * columns);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                Rectangle tile = new Rectangle(column * tileSize, row * tileSize,
+                        Math.min(tileSize, imageWidth - column * tileSize),
+                        Math.min(tileSize, imageHeight - row * tileSize));
+                RenderModel tileModel = tileModels[row * columns + column];
+                int tileRow = row;
+                int tileColumn = column;
+                tasks.add(() -> {
+                    writer.write(renderTile(tileModel, imageWidth, imageHeight, tile), tileRow, tileColumn);
+                    return null;
+                });
+            }
+        }
 
-            current = current.getParent();
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            for (Future<Void> result : pool.invokeAll(tasks))
+                result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rendering tiles");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
         }
 
-        return currentLargestY;
+        return tasks.size();
     }
 
+    /**
+     * Split a render model into one model per tile holding the elements that overlap the tile
+     * <b>NOTE:</b> elements keep their order, and density cells keep the shading of the whole image
+     * @param imageModel render model gathered for the whole image
+     * @param tileSize width and height of each tile
+     * @param rows number of rows of tiles
+     * @param columns number of columns of tiles
+     * @return the render model of each tile, row by row
+     */
+    private RenderModel[] binByTile(RenderModel imageModel, int tileSize, int rows, int columns) {
+        RenderModel[] tileModels = new RenderModel[rows * columns];
+        for (int i = 0; i < tileModels.length; i++)
+            tileModels[i] = new RenderModel(4);
+
+        // extents are widened as much as the culling in the draw methods allows, so no tile loses an element it would draw
+        int[] segments = imageModel.segments;
+        for (int i = 0; i < imageModel.segmentCount; i++) {
+            int x1 = segments[4 * i];
+            int y1 = segments[4 * i + 1];
+            int x2 = segments[4 * i + 2];
+            int y2 = segments[4 * i + 3];
+            for (int row = tileIndex(Math.min(y1, y2) - 2, tileSize, rows);
+                 row <= tileIndex(Math.max(y1, y2) + 2, tileSize, rows); row++)
+                for (int column = tileIndex(Math.min(x1, x2) - 2, tileSize, columns);
+                     column <= tileIndex(Math.max(x1, x2) + 2, tileSize, columns); column++)
+                    tileModels[row * columns + column].addSegment(x1, y1, x2, y2);
+        }
+
+        int[] cells = imageModel.densityCells;
+        for (int i = 0; i < imageModel.densityCellCount; i++) {
+            int x = cells[4 * i];
+            int y = cells[4 * i + 1];
+            int cellWidth = cells[4 * i + 2];
+            int cellHeight = cells[4 * i + 3];
+            for (int row = tileIndex(y, tileSize, rows); row <= tileIndex(y + cellHeight, tileSize, rows); row++)
+                for (int column = tileIndex(x, tileSize, columns); column <= tileIndex(x + cellWidth, tileSize, columns); column++)
+                    tileModels[row * columns + column].addDensityCell(x, y, cellWidth, cellHeight, imageModel.densities[i]);
+        }
+
+        int reach = pointWidth / 2 + 2; // the stamped sprite reaches one pixel past the oval
+        for (int i = 0; i < imageModel.pointCount; i++) {
+            int x = imageModel.pointXs[i];
+            int y = imageModel.pointYs[i];
+            for (int row = tileIndex(y - reach, tileSize, rows); row <= tileIndex(y + reach, tileSize, rows); row++)
+                for (int column = tileIndex(x - reach, tileSize, columns); column <= tileIndex(x + reach, tileSize, columns); column++)
+                    tileModels[row * columns + column].addPoint(x, y);
+        }
+
+        for (RenderModel tileModel : tileModels)
+            tileModel.maxDensity = imageModel.maxDensity;
+        return tileModels;
+    }
+
+    /**
+     * Row or column of the tile holding a pixel, clamped to the grid
+     * @param pixel x- or y-position in the whole image
+     * @param tileSize width and height of each tile
+     * @param count number of rows or columns of tiles
+     * @return index of the row or column
+     */
+    private static int tileIndex(int pixel, int tileSize, int count) {
+        return Math.max(0, Math.min(count - 1, Math.floorDiv(pixel, tileSize)));
+    }
+
+    /**
+     * Render one tile of the graph
+     * @param tileModel render model holding the elements that overlap the tile
+     * @param imageWidth width of the whole image in pixels
+     * @param imageHeight height of the whole image in pixels
+     * @param tile region of the whole image covered by the tile
+     * @return the rendered tile
+     */
+    private BufferedImage renderTile(RenderModel tileModel, int imageWidth, int imageHeight, Rectangle tile) {
+        BufferedImage image = new BufferedImage(tile.width, tile.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.translate(-tile.x, -tile.y);
+        g2.clipRect(tile.x, tile.y, tile.width, tile.height);
+        g2.setColor(getBackground());
+        g2.fillRect(tile.x, tile.y, tile.width, tile.height);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        drawEmptyGraph(g2, imageWidth, imageHeight);
+
+        g2.clipRect(padding + labelPadding, padding, imageWidth - totalPadding, imageHeight - totalPadding);
+        drawTree(g2, tileModel);
+        g2.dispose();
+
+        return image;
+    }
 
     ///////////////////////
     ///// Entry Point /////
@@ -0,0 +1,547 @@
+package kdtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * <h1>KD-Tree of 64 bit integer coordinates</h1>
+ *
+ * <p>
+ *     Specialization of {@link KDTree} for <code>long</code> coordinates, stored in primitive
+ *     arrays so no coordinate is ever boxed. Supports insertion, exact search, minimum and
+ *     maximum per dimension, traversals and nearest neighbour search.
+ * </p>
+ * <p>
+ *     Differences of two longs need 65 bits and their squares 130 bits, so distances are
+ *     computed exactly in unsigned 192 bit arithmetic held in three longs. Neighbours are
+ *     therefore ranked correctly even when coordinates span the whole <code>long</code> range.
+ * </p>
+ * <b>NOTE:</b> Duplicate points are discarded on insertion.
+ * Points tied with a split coordinate go to the right subtree.
+ * Inserted points are copied, and so is every point the tree hands out, so callers never share its arrays.
+ */
+public class LongKDTree {
+    private Node root;
+    private final int K; // number of dimensions
+    private int size;
+    private final long[] mins; // smallest coordinate of any point in each dimension
+    private final long[] maxs; // largest coordinate of any point in each dimension
+
+    /**
+     * Node holding one point and its two subtrees
+     */
+    private static final class Node {
+        final long[] point;
+        Node left;
+        Node right;
+
+        Node(long[] point) {
+            this.point = point;
+        }
+    }
+
+    /**
+     * Ctor only for defining dimensions of LongKDTree
+     * @param K dimensions of LongKDTree
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     */
+    public LongKDTree(int K) throws InvalidInitializationException {
+        if (K < 1)
+            throw new InvalidInitializationException("Cannot initialize tree with dimension K = " + K + "."
+                    + " Please initialize KD-Tree with dimension of at least 1");
+
+        this.K = K;
+        mins = new long[K];
+        maxs = new long[K];
+    }
+
+    /**
+     * Insert a single point into the LongKDTree
+     * <b>NOTE:</b> the coordinates are copied, so the caller may reuse its array
+     * @param coordinates values of each coordinate of the point to insert
+     * @return true on success, false if the point is already in the tree
+     * @throws NodeInsertionException thrown when point does not match dimensions of LongKDTree
+     */
+    public boolean insert(long... coordinates) throws NodeInsertionException {
+        if (coordinates.length != K)
+            throw new NodeInsertionException("Cannot insert node of " + coordinates.length + " dimensions"
+                    + " since it does not match the dimensions of the KD-tree!"
+                    + "\nPlease insert node of exactly " + K + " dimensions.");
+
+        Node inNode = new Node(coordinates.clone());
+        if (root == null) {
+            root = inNode;
+            System.arraycopy(coordinates, 0, mins, 0, K);
+            System.arraycopy(coordinates, 0, maxs, 0, K);
+            size = 1;
+            return true;
+        }
+
+        int depth = 0;
+        Node current = root;
+        while (true) {
+            if (Arrays.equals(current.point, coordinates))
+                return false;
+
+            int currentDimension = depth % K;
+            boolean left = coordinates[currentDimension] < current.point[currentDimension];
+            Node child = left ? current.left : current.right;
+            if (child == null) {
+                if (left)
+                    current.left = inNode;
+                else
+                    current.right = inNode;
+                break;
+            }
+            current = child;
+            depth++;
+        }
+
+        for (int d = 0; d < K; d++) {
+            mins[d] = Math.min(mins[d], coordinates[d]);
+            maxs[d] = Math.max(maxs[d], coordinates[d]);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Find point with matching coordinates
+     * @param searchPoint coordinates to match
+     * @return true if a point with matching coordinates is in the tree
+     * @throws InvalidSearchException if the query does not match the dimensions of the tree
+     */
+    public boolean find(long... searchPoint) throws InvalidSearchException {
+        checkDimensions(searchPoint);
+
+        int depth = 0;
+        Node current = root;
+        while (current != null) {
+            if (Arrays.equals(current.point, searchPoint))
+                return true;
+
+            int currentDimension = depth % K;
+            current = searchPoint[currentDimension] < current.point[currentDimension] ? current.left : current.right;
+            depth++;
+        }
+        return false;
+    }
+
+    /**
+     * Find the minimum value in the LongKDTree, kept up to date on every insertion
+     * @param dimension chosen dimension to examine
+     * @return the minimum value of chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is less than 0 or at least K
+     */
+    public long findMin(int dimension) throws InvalidSearchException {
+        checkSearchDimension(dimension);
+        return mins[dimension];
+    }
+
+    /**
+     * Find the maximum value in the LongKDTree, kept up to date on every insertion
+     * @param dimension chosen dimension to examine
+     * @return the maximum value of chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is less than 0 or at least K
+     */
+    public long findMax(int dimension) throws InvalidSearchException {
+        checkSearchDimension(dimension);
+        return maxs[dimension];
+    }
+
+    /**
+     * Find the point nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @return the point with the smallest Euclidean distance to the query
+     * @throws InvalidSearchException if the tree is empty or the query does not match the dimensions of the tree
+     */
+    public long[] nearest(long... searchPoint) throws InvalidSearchException {
+        return kNearest(searchPoint, 1).get(0);
+    }
+
+    /**
+     * Find the k points nearest to a query point
+     * @param searchPoint coordinates of the query point
+     * @param k number of neighbours to find
+     * @return up to k points ordered from nearest to farthest
+     * @throws InvalidSearchException if the tree is empty, k is less than 1,
+     *                                or the query does not match the dimensions of the tree
+     */
+    public ArrayList<long[]> kNearest(long[] searchPoint, int k) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        checkDimensions(searchPoint);
+        if (k < 1)
+            throw new InvalidSearchException("Queried neighbour count of " + k + " must be at least 1");
+
+        Candidates candidates = new Candidates(Math.min(k, size));
+        nearest(searchPoint, candidates);
+        return candidates.drainSorted();
+    }
+
+    /**
+     * Helper method to search the tree for nearest neighbours without recursion, visiting the side
+     * of the query first and the other side only if it may hold a closer point once it is reached
+     * @param searchPoint coordinates of the query point
+     * @param candidates candidates found so far
+     */
+    private void nearest(long[] searchPoint, Candidates candidates) {
+        Node[] stack = new Node[64];
+        Node[] splitters = new Node[64]; // parent whose plane a far side is behind, null for a near side
+        int[] depths = new int[64];
+        stack[0] = root;
+        int top = 1;
+        while (top > 0) {
+            top--;
+            Node current = stack[top];
+            Node splitter = splitters[top];
+            int depth = depths[top];
+            if (splitter != null) {
+                int splitDimension = (depth - 1) % K;
+                if (!candidates.planeMayBeCloser(searchPoint[splitDimension], splitter.point[splitDimension]))
+                    continue;
+            }
+
+            candidates.offer(current.point, searchPoint);
+
+            int currentDimension = depth % K;
+            boolean leftFirst = searchPoint[currentDimension] < current.point[currentDimension];
+            Node nearSide = leftFirst ? current.left : current.right;
+            Node farSide = leftFirst ? current.right : current.left;
+
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                splitters = Arrays.copyOf(splitters, 2 * splitters.length);
+                depths = Arrays.copyOf(depths, 2 * depths.length);
+            }
+            // the near side is pushed last so it is searched first
+            if (farSide != null) {
+                stack[top] = farSide;
+                splitters[top] = current;
+                depths[top++] = depth + 1;
+            }
+            if (nearSide != null) {
+                stack[top] = nearSide;
+                splitters[top] = null;
+                depths[top++] = depth + 1;
+            }
+        }
+    }
+
+    /**
+     * Find the height of the LongKDTree without recursion
+     * @return the height of the LongKDTree
+     */
+    public int height() {
+        Node[] stack = new Node[64];
+        int[] levels = new int[64]; // level of each stacked node, 1 for the root
+        int top = 0;
+        if (root != null) {
+            stack[0] = root;
+            levels[top++] = 1;
+        }
+
+        int height = 0;
+        while (top > 0) {
+            top--;
+            Node current = stack[top];
+            int level = levels[top];
+            height = Math.max(height, level);
+
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                levels = Arrays.copyOf(levels, 2 * levels.length);
+            }
+            if (current.left != null) {
+                stack[top] = current.left;
+                levels[top++] = level + 1;
+            }
+            if (current.right != null) {
+                stack[top] = current.right;
+                levels[top++] = level + 1;
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Find the pre-order traversal of the LongKDTree
+     * @return the pre-order traversal of the LongKDTree
+     */
+    public String preOrder() {
+        StringBuilder out = new StringBuilder();
+        preOrder(point -> out.append(Arrays.toString(point)).append(" "));
+        return out.toString();
+    }
+
+    /**
+     * Find the in-order traversal of the LongKDTree
+     * @return the in-order traversal of the LongKDTree
+     */
+    public String inOrder() {
+        StringBuilder out = new StringBuilder();
+        inOrder(point -> out.append(Arrays.toString(point)).append(" "));
+        return out.toString();
+    }
+
+    /**
+     * Find the post-order traversal of the LongKDTree
+     * @return the post-order traversal of the LongKDTree
+     */
+    public String postOrder() {
+        StringBuilder out = new StringBuilder();
+        postOrder(point -> out.append(Arrays.toString(point)).append(" "));
+        return out.toString();
+    }
+
+    /**
+     * Visit the points of the LongKDTree in pre-order without recursion
+     * @param visitor callback for each point
+     */
+    public void preOrder(Consumer<long[]> visitor) {
+        Node[] stack = new Node[64];
+        int top = 0;
+        if (root != null)
+            stack[top++] = root;
+        while (top > 0) {
+            Node current = stack[--top];
+            visitor.accept(current.point.clone());
+            if (top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            if (current.right != null)
+                stack[top++] = current.right;
+            if (current.left != null)
+                stack[top++] = current.left;
+        }
+    }
+
+    /**
+     * Visit the points of the LongKDTree in-order without recursion
+     * @param visitor callback for each point
+     */
+    public void inOrder(Consumer<long[]> visitor) {
+        Node[] stack = new Node[64];
+        int top = 0;
+        Node current = root;
+        while (current != null || top > 0) {
+            while (current != null) {
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[top++] = current;
+                current = current.left;
+            }
+            current = stack[--top];
+            visitor.accept(current.point.clone());
+            current = current.right;
+        }
+    }
+
+    /**
+     * Visit the points of the LongKDTree in post-order without recursion
+     * @param visitor callback for each point
+     */
+    public void postOrder(Consumer<long[]> visitor) {
+        Node[] stack = new Node[64];
+        int top = 0;
+        Node current = root;
+        Node lastVisited = null;
+        while (current != null || top > 0) {
+            while (current != null) {
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[top++] = current;
+                current = current.left;
+            }
+            Node peek = stack[top - 1];
+            if (peek.right != null && peek.right != lastVisited) {
+                current = peek.right;
+            } else {
+                visitor.accept(peek.point.clone());
+                lastVisited = stack[--top];
+            }
+        }
+    }
+
+    public int getK() { return K; }
+
+    public int getSize() { return size; }
+
+    private void checkDimensions(long[] searchPoint) throws InvalidSearchException {
+        if (searchPoint.length != K)
+            throw new InvalidSearchException("Search node's dimensions of " + searchPoint.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+    }
+
+    private void checkSearchDimension(int dimension) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        if (dimension < 0 || dimension >= K)
+            throw new InvalidSearchException("Queried search dimension of " + dimension
+                    + " must be at least 0 and less than the KD-tree's dimension of " + K);
+    }
+
+    ///////////////////////////////////
+    ///// Exact Squared Distances /////
+    ///////////////////////////////////
+
+    /**
+     * Distance between two coordinates, as an unsigned long
+     * <b>NOTE:</b> the true difference fits in 64 unsigned bits, so the wrapped subtraction is exact
+     */
+    private static long unsignedDifference(long a, long b) {
+        return a >= b ? a - b : b - a;
+    }
+
+    /**
+     * High 64 bits of the unsigned 128 bit product of two unsigned longs
+     */
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    /**
+     * Bounded max-heap of the nearest points found so far, keyed by exact squared distance
+     * <p>
+     *     Each squared distance is an unsigned 192 bit number stored as three longs, most
+     *     significant first, which is enough for the sum of up to 2^64 squared differences.
+     * </p>
+     */
+    private static final class Candidates {
+        private final long[][] points;
+        private final long[] distances; // three words per candidate, most significant first
+        private int count;
+        private final long[] scratch = new long[3];
+
+        Candidates(int capacity) {
+            points = new long[capacity][];
+            distances = new long[3 * capacity];
+        }
+
+        /**
+         * Offer a point, replacing the farthest candidate if the heap is full and the point is closer
+         * @param point candidate point
+         * @param searchPoint coordinates of the query point
+         */
+        void offer(long[] point, long[] searchPoint) {
+            long high = 0;
+            long middle = 0;
+            long low = 0;
+            for (int d = 0; d < point.length; d++) {
+                long diff = unsignedDifference(point[d], searchPoint[d]);
+                long squareLow = diff * diff;
+                long squareHigh = unsignedMultiplyHigh(diff, diff);
+
+                low += squareLow;
+                long carry = Long.compareUnsigned(low, squareLow) < 0 ? 1 : 0;
+                long addend = squareHigh + carry; // the high word of a square is at most 2^64 - 2
+                middle += addend;
+                if (Long.compareUnsigned(middle, addend) < 0)
+                    high++;
+            }
+            scratch[0] = high;
+            scratch[1] = middle;
+            scratch[2] = low;
+
+            if (count < points.length) {
+                int i = count++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (compare(distances, 3 * parent, scratch, 0) >= 0)
+                        break;
+                    move(parent, i);
+                    i = parent;
+                }
+                set(i, point, scratch);
+            } else if (compare(scratch, 0, distances, 0) < 0) {
+                siftDown(point, scratch);
+            }
+        }
+
+        /**
+         * Check whether the far side of a splitting plane may hold a closer point than the farthest candidate
+         * @param coordinate coordinate of the query in the split dimension
+         * @param split coordinate of the splitting plane
+         * @return true if the far side must be searched
+         */
+        boolean planeMayBeCloser(long coordinate, long split) {
+            if (count < points.length)
+                return true;
+
+            long diff = unsignedDifference(coordinate, split);
+            scratch[0] = 0;
+            scratch[1] = unsignedMultiplyHigh(diff, diff);
+            scratch[2] = diff * diff;
+            return compare(scratch, 0, distances, 0) < 0;
+        }
+
+        /**
+         * Empty the heap into a list ordered from nearest to farthest
+         * @return the candidate points, nearest first
+         */
+        ArrayList<long[]> drainSorted() {
+            long[][] sorted = new long[count][];
+            while (count > 0) {
+                sorted[count - 1] = points[0].clone();
+                count--;
+                if (count > 0) {
+                    long[] lastPoint = points[count];
+                    scratch[0] = distances[3 * count];
+                    scratch[1] = distances[3 * count + 1];
+                    scratch[2] = distances[3 * count + 2];
+                    siftDown(lastPoint, scratch);
+                }
+                points[count] = null;
+            }
+            return new ArrayList<>(Arrays.asList(sorted));
+        }
+
+        /**
+         * Place a candidate at the root and sift it down to its place
+         */
+        private void siftDown(long[] point, long[] distance) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= count)
+                    break;
+                if (child + 1 < count && compare(distances, 3 * (child + 1), distances, 3 * child) > 0)
+                    child++;
+                if (compare(distances, 3 * child, distance, 0) <= 0)
+                    break;
+                move(child, i);
+                i = child;
+            }
+            set(i, point, distance);
+        }
+
+        private void move(int from, int to) {
+            points[to] = points[from];
+            System.arraycopy(distances, 3 * from, distances, 3 * to, 3);
+        }
+
+        private void set(int i, long[] point, long[] distance) {
+            points[i] = point;
+            System.arraycopy(distance, 0, distances, 3 * i, 3);
+        }
+
+        /**
+         * Compare two unsigned 192 bit numbers
+         * @return negative, zero or positive as the first is less than, equal to or greater than the second
+         */
+        private static int compare(long[] a, int aOffset, long[] b, int bOffset) {
+            for (int w = 0; w < 3; w++) {
+                int cmp = Long.compareUnsigned(a[aOffset + w], b[bOffset + w]);
+                if (cmp != 0)
+                    return cmp;
+            }
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "In order traversal: " + inOrder();
+    }
+}
@@ -1,7 +1,17 @@
 package kdtree;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
+import javax.imageio.ImageIO;
 
 public class Main {
 
@@ -137,6 +147,8 @@ public class Main {
         testFindNodeDataInvalidDataDimensions();
         testFindNodeDataDoesNotExist();
         testFindNodeDataDoesExist();
+        testFindPrimitivePointDoesExist();
+        testFindAllBatch();
     }
 
     private static void testFindNodeDataInvalidDataDimensions() {
@@ -256,6 +268,67 @@ public class Main {
         sop("");
     }
 
+    private static void testFindPrimitivePointDoesExist() {
+        String testName = "===== Test Search For Primitive Point that Does Exist In Tree =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with 2 dimensions");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting (50, 40), (40, 50) and (70, 60) into tree as primitive points");
+            testTree.insert(50, 40);
+            testTree.insert(40, 50);
+            testTree.insert(70, 60);
+            sop("tree size is now: " + testTree.getSize());
+            sop(testTree);
+
+            sop("Searching for (70, 60)");
+            sop("Search query returned: " + testTree.find(70, 60));
+
+            sop("Searching for (60, 70)");
+            sop("Search query returned: " + testTree.find(60, 70));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testFindAllBatch() {
+        String testName = "===== Test Batch Search For Several Points =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with 2 dimensions");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting (50, 40), (40, 50) and (70, 60) into tree as primitive points");
+            testTree.insert(50, 40);
+            testTree.insert(40, 50);
+            testTree.insert(70, 60);
+
+            sop("Searching for (70, 60), (60, 70), (50, 40) and (-5, 3) in one batch");
+            boolean[] found = testTree.findAll(Arrays.asList(
+                    new int[] {70, 60}, new int[] {60, 70}, new int[] {50, 40}, new int[] {-5, 3}));
+            sop("Batch query returned: " + Arrays.toString(found));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
     ////////////////////////////////
     ///// FindMin Method Tests /////
     ////////////////////////////////
@@ -820,6 +893,8 @@ public class Main {
         testPreOrderTraversal();
         testInOrderTraversal();
         testPostOrderTraversal();
+        testTraversalIteratorsAndVisitors();
+        testParallelStreamWithTombstones();
     }
 
     private static void testPreOrderTraversal() {
@@ -924,22 +999,1222 @@ public class Main {
         sop("");
     }
 
-    public static void runAllTests() {
-        // NOTE: Closing one window will close all windows when drawing with visualizer
+    private static void testTraversalIteratorsAndVisitors() {
+        String testName = "===== Test Traversal Iterators And Visitors Against Traversal Strings =====";
+        sop(testName);
 
-        testInitialization();
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
 
-        testInsertion();
+            sop("Inserting (50, 40), (40, 70), (80, 20), (90, 10) and (60, 30) into tree");
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+
+            sop("Deleting (80, 20), which is left in the tree as a tombstone");
+            testTree.delete(80, 20);
+
+            sop("Pre-order iterator gives: " + iteratorString(testTree.preOrderIterator()));
+            sop("Pre-order iterator matches pre-order traversal: "
+                    + iteratorString(testTree.preOrderIterator()).equals(testTree.preOrder()));
+            sop("In-order iterator gives: " + iteratorString(testTree.inOrderIterator()));
+            sop("In-order iterator matches in-order traversal: "
+                    + iteratorString(testTree.inOrderIterator()).equals(testTree.inOrder()));
+            sop("Post-order iterator gives: " + iteratorString(testTree.postOrderIterator()));
+            sop("Post-order iterator matches post-order traversal: "
+                    + iteratorString(testTree.postOrderIterator()).equals(testTree.postOrder()));
+
+            StringBuilder preOrderVisits = new StringBuilder();
+            testTree.preOrder(node -> preOrderVisits.append(node.getCoordinates()).append(" "));
+            sop("Pre-order visitor matches pre-order traversal: " + preOrderVisits.toString().equals(testTree.preOrder()));
+            StringBuilder inOrderVisits = new StringBuilder();
+            testTree.inOrder(node -> inOrderVisits.append(node.getCoordinates()).append(" "));
+            sop("In-order visitor matches in-order traversal: " + inOrderVisits.toString().equals(testTree.inOrder()));
+            StringBuilder postOrderVisits = new StringBuilder();
+            testTree.postOrder(node -> postOrderVisits.append(node.getCoordinates()).append(" "));
+            sop("Post-order visitor matches post-order traversal: " + postOrderVisits.toString().equals(testTree.postOrder()));
 
-        testFindMethod();
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
 
-        testFindMinMethod();
+        sop("");
+    }
 
-        testFindMaxMethod();
+    private static void testParallelStreamWithTombstones() {
+        String testName = "===== Test Parallel Stream Of Tree With Tombstones =====";
+        sop(testName);
 
-        testIntegrationAndDrawing();
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
 
-        testTraversals();
+            sop("Inserting (i * 7919 % 5000, i) for i in 0..4999");
+            for (int i = 0; i < 5000; i++)
+                testTree.insert(i * 7919 % 5000, i);
+
+            sop("Parallel stream counts: " + StreamSupport.stream(testTree.spliterator(), true).count());
+            sop("tree size is: " + testTree.getSize());
+
+            sop("Deleting every fifth point");
+            for (int i = 0; i < 5000; i += 5)
+                testTree.delete(i * 7919 % 5000, i);
+            sop("Tombstones left in the tree: " + (testTree.getRoot().getSubtreeSize() - testTree.getSize()));
+
+            // filtering drops the exact size, so the whole tree has to be walked to count it
+            long liveCount = StreamSupport.stream(testTree.spliterator(), true).filter(node -> !node.isDeleted()).count();
+            sop("Parallel stream counts: " + StreamSupport.stream(testTree.spliterator(), true).count());
+            sop("Parallel stream of live nodes counts: " + liveCount);
+            sop("tree size is now: " + testTree.getSize());
+            sop("Parallel stream count matches tree size: " + (liveCount == testTree.getSize()));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    /**
+     * Print the coordinates given by a traversal iterator in the format of the traversal strings
+     * @param traversal iterator over the nodes
+     * @return the coordinates of each node, each followed by a space
+     */
+    private static String iteratorString(Iterator<KDNode> traversal) {
+        StringBuilder out = new StringBuilder();
+        while (traversal.hasNext())
+            out.append(traversal.next().getCoordinates()).append(" ");
+        return out.toString();
+    }
+
+    ///////////////////////////
+    ///// Bulk Load Tests /////
+    ///////////////////////////
+
+    /**
+     * Run all tests of balanced bulk loading.
+     */
+    private static void testBulkLoad() {
+        testBulkLoadSortedNodes();
+        testListConstructorSortedNodes();
+    }
+
+    private static void testBulkLoadSortedNodes() {
+        String testName = "===== Test Bulk Load of Sorted Nodes Gives Balanced Tree =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Bulk loading (0, 0) through (1022, 1022) plus a duplicate (7, 7) into tree");
+            ArrayList<KDNode> nodes = new ArrayList<>();
+            for (int i = 0; i < 1023; i++)
+                nodes.add(new KDNode(i, i));
+            nodes.add(new KDNode(7, 7));
+            sop("Bulk load returned: " + testTree.bulkLoad(nodes));
+            sop("tree size is now: " + testTree.getSize());
+            sop("tree height is now: " + testTree.height());
+
+            sop("Searching for (512, 512)");
+            sop("Search query returned: " + testTree.find(512, 512));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testListConstructorSortedNodes() {
+        String testName = "===== Test List Constructor of Sorted Nodes Gives Balanced Tree =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree from a list of (0, 0) through (1022, 1022), with (7, 7) listed twice");
+            ArrayList<KDNode> nodes = new ArrayList<>();
+            for (int i = 0; i < 1023; i++)
+                nodes.add(new KDNode(i, i));
+            nodes.add(nodes.get(7));
+            KDTree testTree = new KDTree(nodes);
+            sop("tree size is now: " + testTree.getSize());
+            sop("tree height is now: " + testTree.height());
+            sop("nodes in insertion order: " + testTree.getInsertionOrder().size());
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    ///////////////////////////////////
+    ///// Nearest Neighbour Tests /////
+    ///////////////////////////////////
+
+    /**
+     * Run all tests of nearest neighbour search.
+     */
+    private static void testNearestNeighbours() {
+        testNearestEmptyTree();
+        testNearestExampleTree();
+        testNearestBatchExampleTree();
+    }
+
+    private static void testNearestEmptyTree() {
+        String testName = "===== Test Invalid Nearest Neighbour Search On Empty Tree =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with 2 dimensions");
+            KDTree testTree = new KDTree(2);
+
+            sop("Searching for nearest neighbour of (10, 20)");
+            sop("Search query returned: " + testTree.nearest(10, 20));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testNearestExampleTree() {
+        String testName = "===== Test Nearest Neighbour Search On Example Tree From Project Instructions =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting (50, 40), (40, 70), (80, 20), (90, 10) and (60, 30) into tree");
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+
+            sop("Searching for nearest neighbour of (65, 25)");
+            sop("Search query returned: " + testTree.nearest(65, 25));
+
+            sop("Searching for 3 nearest neighbours of (85, 15)");
+            for (KDNode neighbour : testTree.kNearest(new int[] {85, 15}, 3))
+                sop(neighbour);
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testNearestBatchExampleTree() {
+        String testName = "===== Test Batch Nearest Neighbour Search On Example Tree From Project Instructions =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting (50, 40), (40, 70), (80, 20), (90, 10) and (60, 30) into tree");
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+
+            sop("Searching for 2 nearest neighbours of (65, 25) and (85, 15) in one batch");
+            int[] indices = new int[4];
+            double[] distances = new double[4];
+            testTree.kNearestAll(new int[][] {{65, 25}, {85, 15}}, 2, indices, distances);
+            sop("Insertion order indices returned: " + Arrays.toString(indices));
+            sop("Distances returned: " + Arrays.toString(distances));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    //////////////////////////////
+    ///// Range Search Tests /////
+    //////////////////////////////
+
+    /**
+     * Run all tests of orthogonal range search.
+     */
+    private static void testRangeSearch() {
+        testRangeSearchInvalidDimensions();
+        testRangeSearchExampleTree();
+    }
+
+    private static void testRangeSearchInvalidDimensions() {
+        String testName = "===== Test Invalid Range Search With Box Not Matching Tree Dimensions =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with 2 dimensions");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting (50, 40) into tree");
+            testTree.insert(50, 40);
+
+            sop("Counting nodes between (0, 0, 0) and (100, 100, 100)");
+            sop("Range count returned: " + testTree.rangeCount(new int[] {0, 0, 0}, new int[] {100, 100, 100}));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testRangeSearchExampleTree() {
+        String testName = "===== Test Range Search On Example Tree From Project Instructions =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting (50, 40), (40, 70), (80, 20), (90, 10) and (60, 30) into tree");
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+
+            int[] lowerCorner = {55, 0};
+            int[] upperCorner = {100, 35};
+            sop("Searching for nodes between (55, 0) and (100, 35)");
+            for (KDNode found : testTree.rangeQuery(lowerCorner, upperCorner))
+                sop(found);
+            sop("Range count returned: " + testTree.rangeCount(lowerCorner, upperCorner));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    ////////////////////////////////////
+    ///// Balanced Insertion Tests /////
+    ////////////////////////////////////
+
+    /**
+     * Run all tests of height-bounded insertion.
+     */
+    private static void testBalancedInsertion() {
+        testBalancedInsertionInvalidFactor();
+        testBalancedInsertionSortedNodes();
+    }
+
+    private static void testBalancedInsertionInvalidFactor() {
+        String testName = "===== Test Initialization of Balanced Tree with Invalid Balance Factor =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with 2 dimensions and balance factor 0.4");
+            KDTree testTree = new KDTree(2, 0.4);
+            sop("tree size is now: " + testTree.getSize());
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testBalancedInsertionSortedNodes() {
+        String testName = "===== Test Balanced Insertion of Sorted Nodes =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with 2 dimensions and balance factor 0.75");
+            KDTree testTree = new KDTree(2, 0.75);
+
+            sop("Inserting (0, 0) through (1022, 1022) into tree in order");
+            for (int i = 0; i < 1023; i++)
+                testTree.insert(i, i);
+            sop("tree size is now: " + testTree.getSize());
+            sop("tree height is now: " + testTree.height());
+            sop("partial rebuilds: " + testTree.getRebuildCount()
+                    + ", nodes relinked: " + testTree.getRebuildWork());
+
+            sop("Searching for (1000, 1000)");
+            sop("Search query returned: " + testTree.find(1000, 1000));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    /////////////////////////////////
+    ///// Delete and Move Tests /////
+    /////////////////////////////////
+
+    /**
+     * Run all tests of deleting and moving nodes.
+     */
+    private static void testDeleteAndMove() {
+        testDeleteExampleTree();
+        testMoveExampleTree();
+    }
+
+    private static void testDeleteExampleTree() {
+        String testName = "===== Test Delete On Example Tree From Project Instructions =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting (50, 40), (40, 70), (80, 20), (90, 10) and (60, 30) into tree");
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+
+            sop("Deleting (80, 20)");
+            sop("Delete returned: " + testTree.delete(80, 20));
+            sop("tree size is now: " + testTree.getSize());
+            sop(testTree);
+
+            sop("Deleting (80, 20) again");
+            sop("Delete returned: " + testTree.delete(80, 20));
+
+            sop("Searching for (90, 10)");
+            sop("Search query returned: " + testTree.find(90, 10));
+            sop("Maximum of dimension 0 is: " + testTree.findMax(0));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testMoveExampleTree() {
+        String testName = "===== Test Move On Example Tree From Project Instructions =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting (50, 40), (40, 70), (80, 20), (90, 10) and (60, 30) into tree");
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+
+            sop("Moving (90, 10) to (10, 90)");
+            sop("Move returned: " + testTree.move(new int[] {90, 10}, new int[] {10, 90}));
+            sop("tree size is now: " + testTree.getSize());
+            sop(testTree);
+            sop("Insertion order is now: " + testTree.getInsertionOrder());
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    ///////////////////////////////////
+    ///// Concurrent Access Tests /////
+    ///////////////////////////////////
+
+    /**
+     * Run all tests of the thread-safe tree.
+     */
+    private static void testConcurrentAccess() {
+        testConcurrentReadersWithOneWriter();
+        testInsertionListener();
+    }
+
+    private static void testConcurrentReadersWithOneWriter() {
+        String testName = "===== Test Concurrent Readers With One Writer =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new concurrent tree with dimensions initialized to 2");
+            ConcurrentKDTree testTree = new ConcurrentKDTree(2);
+            testTree.insert(0, 0);
+
+            sop("Inserting (i, i) for i in 1..9999 while 4 readers query the tree");
+            AtomicBoolean writing = new AtomicBoolean(true);
+            AtomicInteger failures = new AtomicInteger();
+            Thread[] readers = new Thread[4];
+            for (int r = 0; r < readers.length; r++) {
+                readers[r] = new Thread(() -> {
+                    try {
+                        while (writing.get()) {
+                            if (!testTree.find(0, 0) || testTree.findMin(0) != 0)
+                                failures.incrementAndGet();
+                        }
+                    } catch (InvalidSearchException e) {
+                        failures.incrementAndGet();
+                    }
+                });
+                readers[r].start();
+            }
+
+            for (int i = 1; i < 10000; i++)
+                testTree.insert(i, i);
+            writing.set(false);
+            for (Thread reader : readers)
+                reader.join();
+
+            sop("Failed reads: " + failures.get());
+            sop("tree size is now: " + testTree.getSize());
+            sop("Maximum of dimension 1 is: " + testTree.findMax(1));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        } catch (InterruptedException e) {
+            sop("Interrupted while waiting for readers");
+        }
+
+        sop("");
+    }
+
+    private static void testInsertionListener() {
+        String testName = "===== Test Insertion Listener Of Concurrent Tree =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new concurrent tree with dimensions initialized to 2");
+            ConcurrentKDTree testTree = new ConcurrentKDTree(2);
+            ArrayList<KDNode> inserted = new ArrayList<>();
+            testTree.setInsertionListener(inserted::add);
+
+            sop("Inserting (50, 40), (40, 70), (50, 40) again and (80, 20)");
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(50, 40);
+            testTree.insert(80, 20);
+
+            sop("Nodes seen by the listener: " + inserted);
+            sop("tree size is now: " + testTree.getSize());
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    /////////////////////////////
+    ///// Mapped File Tests /////
+    /////////////////////////////
+
+    /**
+     * Run all tests of writing a tree to a file and mapping it back.
+     */
+    private static void testMappedFile() {
+        testMappedFileExampleTree();
+    }
+
+    private static void testMappedFileExampleTree() {
+        String testName = "===== Test Mapped File Of Example Tree From Project Instructions =====";
+        sop(testName);
+
+        Path file = null;
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting (50, 40), (40, 70), (80, 20), (90, 10) and (60, 30) into tree");
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+
+            sop("Writing tree to a temporary file and mapping it back");
+            file = Files.createTempFile("kdtree", ".bin");
+            MappedKDTree.write(testTree, file);
+            MappedKDTree mappedTree = MappedKDTree.open(file);
+            sop("mapped tree size is: " + mappedTree.getSize());
+            sop(mappedTree);
+
+            sop("Searching for (90, 10)");
+            sop("Search query returned: " + mappedTree.find(90, 10));
+            sop("Searching for (10, 90)");
+            sop("Search query returned: " + mappedTree.find(10, 90));
+            sop("Minimum of dimension 1 is: " + mappedTree.findMin(1));
+            sop("Maximum of dimension 0 is: " + mappedTree.findMax(0));
+            sop("Pre order traversal: " + mappedTree.preOrder());
+            sop("Post order traversal: " + mappedTree.postOrder());
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        } catch (IOException e) {
+            sop("Could not write or map the tree file: " + e.getMessage());
+        } finally {
+            deleteQuietly(file);
+        }
+
+        sop("");
+    }
+
+    ////////////////////////
+    ///// Loader Tests /////
+    ////////////////////////
+
+    /**
+     * Run all tests of loading points from files.
+     */
+    private static void testLoader() {
+        testLoaderCsvFile();
+        testLoaderMalformedCsvFile();
+    }
+
+    private static void testLoaderCsvFile() {
+        String testName = "===== Test Loading Example Tree From CSV File =====";
+        sop(testName);
+
+        Path file = null;
+        try {
+            sop("Writing (50, 40), (40, 70), (80, 20), (90, 10) and (60, 30) to a temporary CSV file");
+            file = Files.createTempFile("kdtree", ".csv");
+            Files.write(file, "# x,y\n50,40\n40,70\n80,20\n90,10\n60,30\n".getBytes(StandardCharsets.US_ASCII));
+
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Loading the file by inserting each point in batches of 2");
+            KDTreeLoader loader = new KDTreeLoader(testTree);
+            loader.setMode(KDTreeLoader.Mode.INSERT);
+            loader.setBatchSize(2);
+            sop("Points read: " + loader.load(file, KDTreeLoader.Format.CSV));
+            sop("tree size is now: " + testTree.getSize());
+            sop(testTree);
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (IOException e) {
+            sop("Could not load the file: " + e.getMessage());
+        } finally {
+            deleteQuietly(file);
+        }
+
+        sop("");
+    }
+
+    private static void testLoaderMalformedCsvFile() {
+        String testName = "===== Test Loading Malformed CSV File =====";
+        sop(testName);
+
+        Path file = null;
+        try {
+            sop("Writing (50, 40) and (40) to a temporary CSV file");
+            file = Files.createTempFile("kdtree", ".csv");
+            Files.write(file, "50,40\n40\n".getBytes(StandardCharsets.US_ASCII));
+
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Bulk loading the file");
+            new KDTreeLoader(testTree).load(file, KDTreeLoader.Format.CSV);
+            sop("tree size is now: " + testTree.getSize());
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (KDTreeLoader.MalformedLineException e) {
+            sop("Could not load the file: line " + e.getLineNumber() + ": " + e.getReason());
+        } catch (IOException e) {
+            sop("Could not load the file: " + e.getMessage());
+        } finally {
+            deleteQuietly(file);
+        }
+
+        sop("");
+    }
+
+    //////////////////////////////////////
+    ///// Primitive Coordinate Tests /////
+    //////////////////////////////////////
+
+    /**
+     * Run all tests of the trees specialized for long and double coordinates.
+     */
+    private static void testPrimitiveTrees() {
+        testLongTreeAtExtremes();
+        testDoubleTreeAtExtremes();
+    }
+
+    private static void testLongTreeAtExtremes() {
+        String testName = "===== Test Long Coordinate Tree At Extremes Of Range =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new long tree with dimensions initialized to 2");
+            LongKDTree testTree = new LongKDTree(2);
+
+            sop("Inserting (MIN, MIN), (MAX, MAX), (0, 0) and (MAX, MIN)");
+            testTree.insert(Long.MIN_VALUE, Long.MIN_VALUE);
+            testTree.insert(Long.MAX_VALUE, Long.MAX_VALUE);
+            testTree.insert(0, 0);
+            testTree.insert(Long.MAX_VALUE, Long.MIN_VALUE);
+            sop(testTree);
+
+            sop("Minimum of dimension 0 is: " + testTree.findMin(0));
+            sop("Maximum of dimension 1 is: " + testTree.findMax(1));
+            sop("Find (MAX, MIN): " + testTree.find(Long.MAX_VALUE, Long.MIN_VALUE));
+            sop("Nearest to (MAX, MAX - 1) is: "
+                    + Arrays.toString(testTree.nearest(Long.MAX_VALUE, Long.MAX_VALUE - 1)));
+            sop("Nearest to (MIN + 1, 1) is: " + Arrays.toString(testTree.nearest(Long.MIN_VALUE + 1, 1)));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testDoubleTreeAtExtremes() {
+        String testName = "===== Test Double Coordinate Tree At Extremes Of Range =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new double tree with dimensions initialized to 2");
+            DoubleKDTree testTree = new DoubleKDTree(2);
+
+            sop("Inserting (-1e308, -1e308), (1e308, 1e308), (1e-300, 0) and (2e-300, 0)");
+            testTree.insert(-1e308, -1e308);
+            testTree.insert(1e308, 1e308);
+            testTree.insert(1e-300, 0);
+            testTree.insert(2e-300, 0);
+            sop(testTree);
+
+            sop("Nearest to (0.9e308, 1e308) is: " + Arrays.toString(testTree.nearest(0.9e308, 1e308)));
+            sop("Nearest to (1.6e-300, 0) is: " + Arrays.toString(testTree.nearest(1.6e-300, 0)));
+            sop("Two nearest to (0, 0) are: " + Arrays.toString(testTree.kNearest(new double[] {0, 0}, 2).get(0))
+                    + " " + Arrays.toString(testTree.kNearest(new double[] {0, 0}, 2).get(1)));
+
+            sop("Inserting (NaN, 0)");
+            testTree.insert(Double.NaN, 0);
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    /////////////////////////////
+    ///// Spatial Map Tests /////
+    /////////////////////////////
+
+    /**
+     * Run all tests of the maps storing a value at each point.
+     */
+    private static void testSpatialMaps() {
+        testKDTreeMapPayloads();
+        testKDTreeLongMapPayloads();
+    }
+
+    private static void testKDTreeMapPayloads() {
+        String testName = "===== Test Spatial Map With Object Values =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new map with dimensions initialized to 2");
+            KDTreeMap<String> testMap = new KDTreeMap<>(2);
+
+            sop("Putting (50, 40)=a, (40, 70)=b, (80, 20)=c, (90, 10)=d and (60, 30)=e");
+            testMap.put(new int[] {50, 40}, "a");
+            testMap.put(new int[] {40, 70}, "b");
+            testMap.put(new int[] {80, 20}, "c");
+            testMap.put(new int[] {90, 10}, "d");
+            testMap.put(new int[] {60, 30}, "e");
+            sop(testMap);
+
+            sop("Putting (80, 20)=f replaces: " + testMap.put(new int[] {80, 20}, "f"));
+            sop("Size is: " + testMap.getSize());
+            sop("Value at (80, 20) is: " + testMap.get(80, 20));
+            sop("Value at (10, 10) is: " + testMap.get(10, 10));
+            sop("Value nearest to (85, 15) is: " + testMap.nearest(85, 15));
+            sop("Values of the 2 points nearest to (55, 35) are: " + testMap.kNearest(new int[] {55, 35}, 2));
+            sop("Values inside (45, 10)-(85, 45) are: "
+                    + testMap.rangeQuery(new int[] {45, 10}, new int[] {85, 45}));
+            sop("Removing (50, 40) returns: " + testMap.remove(50, 40));
+            sop(testMap);
+
+            sop("Getting the value at (1, 2, 3)");
+            testMap.get(1, 2, 3);
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testKDTreeLongMapPayloads() {
+        String testName = "===== Test Spatial Map With Long Values =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new long map with dimensions initialized to 2");
+            KDTreeLongMap testMap = new KDTreeLongMap(2);
+
+            sop("Putting (50, 40)=1, (40, 70)=2, (80, 20)=3, (90, 10)=4 and (60, 30)=5");
+            testMap.put(new int[] {50, 40}, 1);
+            testMap.put(new int[] {40, 70}, 2);
+            testMap.put(new int[] {80, 20}, 3);
+            testMap.put(new int[] {90, 10}, 4);
+            testMap.put(new int[] {60, 30}, 5);
+            sop(testMap);
+
+            sop("Putting (90, 10)=" + Long.MAX_VALUE + " is new: " + testMap.put(new int[] {90, 10}, Long.MAX_VALUE));
+            sop("Value at (90, 10) is: " + testMap.getOrDefault(new int[] {90, 10}, -1));
+            sop("Value at (10, 10) is: " + testMap.getOrDefault(new int[] {10, 10}, -1));
+            sop("Value nearest to (45, 65) is: " + testMap.nearest(45, 65));
+            sop("Values of the 3 points nearest to (55, 35) are: "
+                    + Arrays.toString(testMap.kNearest(new int[] {55, 35}, 3)));
+            sop("Values inside (0, 0)-(60, 100) are: "
+                    + Arrays.toString(testMap.rangeQuery(new int[] {0, 0}, new int[] {60, 100})));
+            sop("Removing (40, 70) returns: " + testMap.remove(40, 70));
+            sop("Removing (40, 70) again returns: " + testMap.remove(40, 70));
+            sop(testMap);
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    /////////////////////////////
+    ///// Bucket Tree Tests /////
+    /////////////////////////////
+
+    /**
+     * Run all tests of the tree storing points in leaf buckets.
+     */
+    private static void testBucketTree() {
+        testBucketTreeSplits();
+        testBucketTreeBulkLoad();
+    }
+
+    private static void testBucketTreeSplits() {
+        String testName = "===== Test Bucket Tree Splitting Full Buckets =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new bucket tree with dimensions initialized to 2 and buckets of 2 points");
+            BucketKDTree testTree = new BucketKDTree(2, 2);
+
+            sop("Inserting (50, 40), (40, 70), (80, 20), (90, 10), (60, 30) and (50, 40) again");
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+            sop("Inserting (50, 40) again returns: " + testTree.insert(50, 40));
+            sop(testTree);
+            sop("Size: " + testTree.getSize() + ", buckets: " + testTree.getBucketCount()
+                    + ", height: " + testTree.height());
+
+            sop("Find (60, 30): " + testTree.find(60, 30));
+            sop("Find (60, 31): " + testTree.find(60, 31));
+            sop("Minimum of dimension 1 is: " + testTree.findMin(1));
+            sop("Maximum of dimension 0 is: " + testTree.findMax(0));
+            sop("Nearest to (85, 15) is: " + Arrays.toString(testTree.nearest(85, 15)));
+            ArrayList<int[]> neighbours = testTree.kNearest(new int[] {55, 35}, 3);
+            StringBuilder out = new StringBuilder("3 nearest to (55, 35) are:");
+            for (int[] neighbour : neighbours)
+                out.append(" ").append(Arrays.toString(neighbour));
+            sop(out);
+
+            sop("Instantiating new bucket tree with buckets of 1 point");
+            new BucketKDTree(2, 1);
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testBucketTreeBulkLoad() {
+        String testName = "===== Test Bucket Tree Bulk Load Of Points Sharing A Coordinate =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new bucket tree with dimensions initialized to 2 and buckets of 4 points");
+            BucketKDTree testTree = new BucketKDTree(2, 4);
+
+            sop("Bulk loading (7, 0) through (7, 9) and (7, 3) again");
+            ArrayList<int[]> points = new ArrayList<>();
+            for (int y = 0; y < 10; y++)
+                points.add(new int[] {7, y});
+            points.add(new int[] {7, 3});
+            sop("All points inserted: " + testTree.bulkLoad(points));
+            sop(testTree);
+            sop("Size: " + testTree.getSize() + ", buckets: " + testTree.getBucketCount()
+                    + ", height: " + testTree.height());
+            sop("Nearest to (0, 6) is: " + Arrays.toString(testTree.nearest(0, 6)));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    /////////////////////////////
+    ///// Frozen Tree Tests /////
+    /////////////////////////////
+
+    /**
+     * Run all tests of immutable trees made by freezing a KDTree.
+     */
+    private static void testFrozenTree() {
+        testFreezeExampleTree();
+        testFrozenTreeTiedCoordinates();
+    }
+
+    private static void testFreezeExampleTree() {
+        String testName = "===== Test Freezing Example Tree =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+
+            sop("Freezing the tree, then inserting (10, 10) into the original tree");
+            FrozenKDTree frozenTree = testTree.freeze();
+            testTree.insert(10, 10);
+            sop(frozenTree);
+            sop("Size: " + frozenTree.getSize() + ", height: " + frozenTree.height());
+
+            sop("Find (60, 30): " + frozenTree.find(60, 30));
+            sop("Find (10, 10): " + frozenTree.find(10, 10));
+            sop("Minimum of dimension 1 is: " + frozenTree.findMin(1));
+            sop("Maximum of dimension 0 is: " + frozenTree.findMax(0));
+            sop("Nearest to (15, 15) is: " + Arrays.toString(frozenTree.nearest(15, 15)));
+            ArrayList<int[]> neighbours = frozenTree.kNearest(new int[] {55, 35}, 3);
+            StringBuilder out = new StringBuilder("3 nearest to (55, 35) are:");
+            for (int[] neighbour : neighbours)
+                out.append(" ").append(Arrays.toString(neighbour));
+            sop(out);
+
+            sop("Searching frozen copy of an empty tree");
+            new KDTree(2).freeze().nearest(0, 0);
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    private static void testFrozenTreeTiedCoordinates() {
+        String testName = "===== Test Frozen Tree With Points Tied On Split Coordinates =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+
+            sop("Inserting every point of the grid (0..2, 0..2)");
+            for (int x = 0; x < 3; x++)
+                for (int y = 0; y < 3; y++)
+                    testTree.insert(x, y);
+
+            FrozenKDTree frozenTree = testTree.freeze();
+            sop(frozenTree);
+
+            int found = 0;
+            for (int x = 0; x < 3; x++)
+                for (int y = 0; y < 3; y++)
+                    if (frozenTree.find(x, y))
+                        found++;
+            sop("Grid points found in the frozen tree: " + found);
+            sop("Find (1, 3): " + frozenTree.find(1, 3));
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    ////////////////////////////////////
+    ///// Weighted Aggregate Tests /////
+    ////////////////////////////////////
+
+    /**
+     * Run all tests of aggregating weights over boxes.
+     */
+    private static void testWeightedAggregates() {
+        testRangeAggregateExampleTree();
+    }
+
+    private static void testRangeAggregateExampleTree() {
+        String testName = "===== Test Range Aggregates Of Example Tree =====";
+        sop(testName);
+
+        try {
+            sop("Instantiating new weighted tree with dimensions initialized to 2");
+            WeightedKDTree testTree = new WeightedKDTree(2);
+
+            sop("Inserting (50, 40)=5, (40, 70)=1.5, (80, 20)=-2, (90, 10)=8 and (60, 30)=3");
+            testTree.insert(new int[] {50, 40}, 5);
+            testTree.insert(new int[] {40, 70}, 1.5);
+            testTree.insert(new int[] {80, 20}, -2);
+            testTree.insert(new int[] {90, 10}, 8);
+            testTree.insert(new int[] {60, 30}, 3);
+            sop(testTree);
+
+            sop("Total: " + testTree.totalAggregate());
+            sop("Inside (45, 10)-(85, 45): " + testTree.rangeAggregate(new int[] {45, 10}, new int[] {85, 45}));
+            sop("Inside (0, 0)-(30, 30): " + testTree.rangeAggregate(new int[] {0, 0}, new int[] {30, 30}));
+
+            sop("Deleting (90, 10)");
+            testTree.delete(90, 10);
+            sop("Total: " + testTree.totalAggregate());
+
+            sop("Inserting (10, 10) with weight NaN");
+            testTree.insert(new int[] {10, 10}, Double.NaN);
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (InvalidSearchException e) {
+            e.printMsg();
+        }
+
+        sop("");
+    }
+
+    ////////////////////////////////////
+    ///// Headless Rendering Tests /////
+    ////////////////////////////////////
+
+    /**
+     * Run all tests of rendering trees to image files.
+     */
+    private static void testHeadlessRendering() {
+        testWriteTilesExampleTree();
+    }
+
+    private static void testWriteTilesExampleTree() {
+        String testName = "===== Test Rendering Example Tree To PNG Tiles =====";
+        sop(testName);
+
+        Path file = null;
+        Path directory = null;
+        try {
+            sop("Instantiating new tree with dimensions initialized to 2");
+            KDTree testTree = new KDTree(2);
+            testTree.insert(50, 40);
+            testTree.insert(40, 70);
+            testTree.insert(80, 20);
+            testTree.insert(90, 10);
+            testTree.insert(60, 30);
+
+            sop("Rendering the tree to a single 1080x720 PNG file");
+            KDTreeVisualizer visualizer = new KDTreeVisualizer(testTree);
+            file = Files.createTempFile("kdtree", ".png");
+            visualizer.writePng(file, 1080, 720);
+            BufferedImage whole = ImageIO.read(file.toFile());
+            sop("Image size: " + whole.getWidth() + "x" + whole.getHeight());
+
+            sop("Rendering the tree to 1080x720 pixels in tiles of 512x512");
+            directory = Files.createTempDirectory("kdtree");
+            sop("Tiles written: " + visualizer.writeTiles(directory, 1080, 720, 512));
+
+            int mismatches = 0;
+            for (int row = 0; row < 2; row++) {
+                for (int column = 0; column < 3; column++) {
+                    Path tileFile = directory.resolve("tile-" + row + "-" + column + ".png");
+                    BufferedImage tile = ImageIO.read(tileFile.toFile());
+                    for (int y = 0; y < tile.getHeight(); y++)
+                        for (int x = 0; x < tile.getWidth(); x++)
+                            if (tile.getRGB(x, y) != whole.getRGB(512 * column + x, 512 * row + y))
+                                mismatches++;
+                    deleteQuietly(tileFile);
+                }
+            }
+            sop("Pixels of the tiles differing from the single image: " + mismatches);
+
+        } catch (InvalidInitializationException e) {
+            e.printMsg();
+        } catch (NodeInsertionException e) {
+            e.printMsg();
+        } catch (IOException e) {
+            sop("Could not render the tree: " + e.getMessage());
+        } finally {
+            deleteQuietly(file);
+            deleteQuietly(directory);
+        }
+
+        sop("");
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            if (file != null)
+                Files.deleteIfExists(file);
+        } catch (IOException e) {
+            sop("Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    public static void runAllTests() {
+        // NOTE: Closing one window will close all windows when drawing with visualizer
+
+        testInitialization();
+
+        testInsertion();
+
+        testFindMethod();
+
+        testFindMinMethod();
+
+        testFindMaxMethod();
+
+        testIntegrationAndDrawing();
+
+        testTraversals();
+
+        testBulkLoad();
+
+        testNearestNeighbours();
+
+        testRangeSearch();
+
+        testBalancedInsertion();
+
+        testDeleteAndMove();
+
+        testConcurrentAccess();
+
+        testMappedFile();
+
+        testLoader();
+
+        testHeadlessRendering();
+
+        testPrimitiveTrees();
+
+        testSpatialMaps();
+
+        testBucketTree();
+
+        testFrozenTree();
+
+        testWeightedAggregates();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,339 @@
+package kdtree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * <h1>Read-only KD-Tree mapped from a file</h1>
+ *
+ * <p>
+ *     A tree written by {@link #write(KDTree, Path)} is stored as a flat array of fixed size
+ *     node records in pre-order, so the left child of a node is always the next record and
+ *     only the index of the right child is stored. {@link #open(Path)} maps the file into
+ *     memory and every query reads the mapped bytes directly, so opening a tree costs the
+ *     same whatever its size and pages are only loaded when a query touches them.
+ * </p>
+ * File layout, all values little-endian 32 bit integers:
+ * <ul>
+ *     <li>header: magic, version, K, live node count, record count,
+ *     K minimums and K maximums of the live nodes</li>
+ *     <li>one record per node: K coordinates, index of the right child (-1 if none), flags</li>
+ * </ul>
+ * <b>NOTE:</b> deleted nodes are written as flagged records so the search paths stay intact,
+ * call {@link KDTree#compact()} before writing to leave them out.
+ */
+public class MappedKDTree {
+    private static final int MAGIC = 0x4B44544D; // "KDTM"
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_BYTES = 5 * Integer.BYTES;
+
+    private static final int HAS_LEFT = 1;
+    private static final int DELETED = 2;
+
+    private static final int PRE_ORDER = 0;
+    private static final int IN_ORDER = 1;
+    private static final int POST_ORDER = 2;
+
+    private final int K;
+    private final int size;
+    private final int recordCount;
+    private final int[] bounds; // K minimums followed by K maximums
+    private final int recordBytes;
+    private final int recordsPerRegion;
+    private final MappedByteBuffer[] regions; // a single mapping cannot exceed 2 GB
+
+    private MappedKDTree(int K, int size, int recordCount, int[] bounds, MappedByteBuffer[] regions,
+                         int recordsPerRegion) {
+        this.K = K;
+        this.size = size;
+        this.recordCount = recordCount;
+        this.bounds = bounds;
+        this.recordBytes = (K + 2) * Integer.BYTES;
+        this.recordsPerRegion = recordsPerRegion;
+        this.regions = regions;
+    }
+
+    /**
+     * Write a tree to a file in the mapped format, replacing the file if it exists
+     * @param tree tree to write
+     * @param path file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(KDTree tree, Path path) throws IOException {
+        int K = tree.getK();
+        KDNode root = tree.getRoot();
+        int recordCount = root == null ? 0 : root.getSubtreeSize();
+        int recordBytes = (K + 2) * Integer.BYTES;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(1 << 16, headerBytes(K) + recordBytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(K).putInt(tree.getSize()).putInt(recordCount);
+            for (int d = 0; d < K; d++)
+                buffer.putInt(root == null ? Integer.MAX_VALUE : root.getMinBound(d));
+            for (int d = 0; d < K; d++)
+                buffer.putInt(root == null ? Integer.MIN_VALUE : root.getMaxBound(d));
+
+            // pre-order walk over every physical node, tombstones included
+            KDNode[] stack = new KDNode[64];
+            int top = 0;
+            if (root != null)
+                stack[top++] = root;
+            int index = 0;
+            while (top > 0) {
+                KDNode current = stack[--top];
+                KDNode left = current.getLeftChild();
+                KDNode right = current.getRightChild();
+
+                if (buffer.remaining() < recordBytes)
+                    flush(channel, buffer);
+                for (int d = 0; d < K; d++)
+                    buffer.putInt(current.getCoordinate(d));
+                buffer.putInt(right == null ? -1 : index + 1 + (left == null ? 0 : left.getSubtreeSize()));
+                buffer.putInt((left != null ? HAS_LEFT : 0) | (current.isDeleted() ? DELETED : 0));
+                index++;
+
+                if (top + 2 > stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                if (right != null)
+                    stack[top++] = right;
+                if (left != null)
+                    stack[top++] = left;
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private static int headerBytes(int K) {
+        return FIXED_HEADER_BYTES + 2 * K * Integer.BYTES;
+    }
+
+    /**
+     * Map a tree file written by {@link #write(KDTree, Path)}
+     * @param path file to open
+     * @return the mapped tree
+     * @throws IOException if the file cannot be read or is not a tree file
+     */
+    public static MappedKDTree open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileBytes = channel.size();
+            if (fileBytes < FIXED_HEADER_BYTES)
+                throw new IOException(path + " is too short to be a KD-tree file");
+
+            ByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, FIXED_HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (fixed.getInt(0) != MAGIC)
+                throw new IOException(path + " is not a KD-tree file");
+            if (fixed.getInt(4) != VERSION)
+                throw new IOException(path + " has unsupported KD-tree file version " + fixed.getInt(4));
+            int K = fixed.getInt(8);
+            int size = fixed.getInt(12);
+            int recordCount = fixed.getInt(16);
+
+            long recordBytes = (K + 2L) * Integer.BYTES;
+            long headerBytes = FIXED_HEADER_BYTES + 2L * K * Integer.BYTES;
+            if (K < 1 || size < 0 || recordCount < size || fileBytes != headerBytes + recordBytes * recordCount)
+                throw new IOException(path + " is a truncated or corrupt KD-tree file");
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, FIXED_HEADER_BYTES, 2L * K * Integer.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            int[] bounds = new int[2 * K];
+            for (int i = 0; i < 2 * K; i++)
+                bounds[i] = header.getInt(i * Integer.BYTES);
+
+            int recordsPerRegion = (int) (Integer.MAX_VALUE / recordBytes);
+            int regionCount = (int) ((recordCount + (long) recordsPerRegion - 1) / recordsPerRegion);
+            MappedByteBuffer[] regions = new MappedByteBuffer[regionCount];
+            for (int r = 0; r < regionCount; r++) {
+                long first = (long) r * recordsPerRegion;
+                long count = Math.min(recordsPerRegion, recordCount - first);
+                regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, headerBytes + first * recordBytes,
+                        count * recordBytes);
+                regions[r].order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            return new MappedKDTree(K, size, recordCount, bounds, regions, recordsPerRegion);
+        }
+    }
+
+    private int coordinate(int record, int dimension) {
+        return regions[record / recordsPerRegion]
+                .getInt((record % recordsPerRegion) * recordBytes + dimension * Integer.BYTES);
+    }
+
+    private int rightChild(int record) {
+        return coordinate(record, K);
+    }
+
+    private int flags(int record) {
+        return coordinate(record, K + 1);
+    }
+
+    /**
+     * Find node with matching coordinates
+     * @param searchPoint coordinates to match in node to find
+     * @return true if node is found with coordinates matching input coordinates
+     * @throws InvalidSearchException if the query does not match the dimensions of the tree
+     */
+    public boolean find(int... searchPoint) throws InvalidSearchException {
+        if (searchPoint.length != K) {
+            throw new InvalidSearchException("Search node's dimensions of " + searchPoint.length
+                    + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + K);
+        }
+
+        int current = recordCount == 0 ? -1 : 0;
+        int depth = 0;
+        while (current >= 0) {
+            int flags = flags(current);
+            boolean matches = (flags & DELETED) == 0;
+            for (int d = 0; d < K && matches; d++)
+                matches = coordinate(current, d) == searchPoint[d];
+            if (matches)
+                return true;
+
+            int currentDimension = depth % K;
+            if (searchPoint[currentDimension] < coordinate(current, currentDimension))
+                current = (flags & HAS_LEFT) != 0 ? current + 1 : -1;
+            else
+                current = rightChild(current);
+            depth++;
+        }
+
+        return false;
+    }
+
+    /**
+     * Find minimum value of a dimension within tree
+     * @param dimension chosen dimension
+     * @return the minimum value of the chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is out of range
+     */
+    public int findMin(int dimension) throws InvalidSearchException {
+        checkDimension(dimension);
+        return bounds[dimension];
+    }
+
+    /**
+     * Find maximum value of a dimension within tree
+     * @param dimension chosen dimension
+     * @return the maximum value of the chosen dimension
+     * @throws InvalidSearchException if the tree is empty or the dimension is out of range
+     */
+    public int findMax(int dimension) throws InvalidSearchException {
+        checkDimension(dimension);
+        return bounds[K + dimension];
+    }
+
+    private void checkDimension(int dimension) throws InvalidSearchException {
+        if (size == 0)
+            throw new InvalidSearchException("Cannot perform search on KD-tree of size 0. Please insert at least one node.");
+        if (dimension < 0 || dimension >= K)
+            throw new InvalidSearchException("Queried search dimension of " + dimension
+                    + " must be at least 0 and less than the KD-tree's dimension of " + K);
+    }
+
+    public String preOrder() { return traversalString(PRE_ORDER); }
+
+    public String inOrder() { return traversalString(IN_ORDER); }
+
+    public String postOrder() { return traversalString(POST_ORDER); }
+
+    /**
+     * Visit the live nodes in pre-order
+     * <b>NOTE:</b> the same array is passed for every node, copy it to keep it
+     * @param visitor called with the coordinates of each node
+     */
+    public void preOrder(Consumer<int[]> visitor) { traverse(PRE_ORDER, visitor); }
+
+    /**
+     * Visit the live nodes in in-order
+     * <b>NOTE:</b> the same array is passed for every node, copy it to keep it
+     * @param visitor called with the coordinates of each node
+     */
+    public void inOrder(Consumer<int[]> visitor) { traverse(IN_ORDER, visitor); }
+
+    /**
+     * Visit the live nodes in post-order
+     * <b>NOTE:</b> the same array is passed for every node, copy it to keep it
+     * @param visitor called with the coordinates of each node
+     */
+    public void postOrder(Consumer<int[]> visitor) { traverse(POST_ORDER, visitor); }
+
+    private String traversalString(int order) {
+        StringBuilder out = new StringBuilder();
+        traverse(order, point -> out.append(Arrays.toString(point)).append(" "));
+        return out.toString();
+    }
+
+    /**
+     * Helper method to walk the records with an explicit stack. Each record is pushed once and
+     * passes through three stages: before its left subtree, between its subtrees and after both.
+     * @param order stage at which a record is visited
+     * @param visitor called with the coordinates of each live record
+     */
+    private void traverse(int order, Consumer<int[]> visitor) {
+        if (recordCount == 0)
+            return;
+
+        int[] point = new int[K];
+        int[] records = new int[64];
+        int[] stages = new int[64];
+        records[0] = 0;
+        int top = 1;
+        while (top > 0) {
+            int current = records[top - 1];
+            int stage = stages[top - 1]++;
+            int flags = flags(current);
+
+            if (stage == order && (flags & DELETED) == 0) {
+                for (int d = 0; d < K; d++)
+                    point[d] = coordinate(current, d);
+                visitor.accept(point);
+            }
+
+            int child = -1;
+            if (stage == 0 && (flags & HAS_LEFT) != 0)
+                child = current + 1;
+            else if (stage == 1)
+                child = rightChild(current);
+            else if (stage == 2)
+                top--;
+
+            if (child >= 0) {
+                if (top == records.length) {
+                    records = Arrays.copyOf(records, 2 * top);
+                    stages = Arrays.copyOf(stages, 2 * top);
+                }
+                records[top] = child;
+                stages[top] = 0;
+                top++;
+            }
+        }
+    }
+
+    public int getK() { return K; }
+
+    public int getSize() { return size; }
+
+    @Override
+    public String toString() {
+        return "In order traversal: " + inOrder();
+    }
+}
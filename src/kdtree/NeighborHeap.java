@@ -0,0 +1,141 @@
+package kdtree;
+
+import java.util.ArrayList;
+
+/**
+ * <h1>Bounded max-heap of nearest neighbour candidates</h1>
+ *
+ * <p>
+ *     Keeps the k closest nodes seen so far, keyed by squared distance, with
+ *     the farthest candidate at the top so it can be replaced in O(log k).
+ *     Storage is allocated once so a search allocates nothing per visited node.
+ * </p>
+ */
+class NeighborHeap {
+    private final KDNode[] nodes;
+    private final double[] distances;
+    private int count;
+
+    /**
+     * Ctor for an empty heap
+     * @param capacity maximum number of candidates to keep
+     */
+    NeighborHeap(int capacity) {
+        nodes = new KDNode[capacity];
+        distances = new double[capacity];
+        count = 0;
+    }
+
+    /**
+     * Remove all candidates so the heap can be reused for another query
+     */
+    void clear() {
+        for (int i = 0; i < count; i++)
+            nodes[i] = null;
+        count = 0;
+    }
+
+    int size() { return count; }
+
+    /**
+     * Squared distance a new candidate must beat to enter the heap
+     * @return distance of the farthest candidate, or infinity while the heap is not full
+     */
+    double worstDistance() {
+        return count < nodes.length ? Double.POSITIVE_INFINITY : distances[0];
+    }
+
+    /**
+     * Offer a candidate, replacing the farthest one if the heap is full
+     * @param node candidate node
+     * @param distance squared distance from the query to the candidate
+     */
+    void offer(KDNode node, double distance) {
+        if (count < nodes.length) {
+            int i = count++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] >= distance)
+                    break;
+                nodes[i] = nodes[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        } else if (distance < distances[0]) {
+            siftDown(node, distance, count);
+        }
+    }
+
+    /**
+     * Empty the heap into a list ordered from nearest to farthest
+     * @return the candidates, nearest first
+     */
+    ArrayList<KDNode> drainSorted() {
+        KDNode[] sorted = new KDNode[count];
+        while (count > 0) {
+            sorted[count - 1] = nodes[0];
+            count--;
+            KDNode last = nodes[count];
+            double lastDistance = distances[count];
+            nodes[count] = null;
+            if (count > 0)
+                siftDown(last, lastDistance, count);
+        }
+
+        ArrayList<KDNode> out = new ArrayList<>(sorted.length);
+        for (KDNode node : sorted)
+            out.add(node);
+        return out;
+    }
+
+    /**
+     * Empty the heap into primitive output arrays, nearest first
+     * <b>NOTE:</b> slots beyond the number of candidates get index -1 and an infinite distance
+     * @param outIndices receives the insertion index of each candidate
+     * @param outDistances receives the Euclidean distance of each candidate
+     * @param offset first slot to write
+     * @param slots number of slots to write
+     */
+    void drainInto(int[] outIndices, double[] outDistances, int offset, int slots) {
+        for (int i = count; i < slots; i++) {
+            outIndices[offset + i] = -1;
+            outDistances[offset + i] = Double.POSITIVE_INFINITY;
+        }
+        while (count > 0) {
+            count--;
+            outIndices[offset + count] = nodes[0].getInsertionIndex();
+            outDistances[offset + count] = Math.sqrt(distances[0]);
+            KDNode last = nodes[count];
+            double lastDistance = distances[count];
+            nodes[count] = null;
+            if (count > 0)
+                siftDown(last, lastDistance, count);
+        }
+    }
+
+    /**
+     * Place a candidate at the top and sift it down to restore the heap order
+     * @param node candidate node
+     * @param distance squared distance of the candidate
+     * @param limit number of entries in the heap
+     */
+    private void siftDown(KDNode node, double distance, int limit) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= limit)
+                break;
+            if (child + 1 < limit && distances[child + 1] > distances[child])
+                child++;
+            if (distances[child] <= distance)
+                break;
+            nodes[i] = nodes[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        nodes[i] = node;
+        distances[i] = distance;
+    }
+}
@@ -0,0 +1,94 @@
+package kdtree;
+
+/**
+ * <h1>Bounded max-heap of nearest neighbour candidates held by slot</h1>
+ *
+ * <p>
+ *     Counterpart of {@link NeighborHeap} for trees that store their points in one flat
+ *     coordinate array rather than in nodes. Candidates are kept as the slot of their point
+ *     in that array, keyed by squared distance, so no point is copied until the search is done.
+ * </p>
+ */
+class SlotNeighborHeap {
+    private final int[] slots;
+    private final double[] distances;
+    private int count;
+
+    /**
+     * Ctor for an empty heap
+     * @param capacity maximum number of candidates to keep
+     */
+    SlotNeighborHeap(int capacity) {
+        slots = new int[capacity];
+        distances = new double[capacity];
+    }
+
+    int size() { return count; }
+
+    /**
+     * Squared distance a new candidate must beat to enter the heap
+     * @return distance of the farthest candidate, or infinity while the heap is not full
+     */
+    double worstDistance() {
+        return count < slots.length ? Double.POSITIVE_INFINITY : distances[0];
+    }
+
+    /**
+     * Offer a point, replacing the farthest candidate if the heap is full and the point is closer
+     * @param slot slot of the candidate point
+     * @param distance squared distance from the query to the candidate
+     */
+    void offer(int slot, double distance) {
+        if (count < slots.length) {
+            int i = count++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] >= distance)
+                    break;
+                slots[i] = slots[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            slots[i] = slot;
+            distances[i] = distance;
+        } else if (distance < distances[0]) {
+            siftDown(slot, distance);
+        }
+    }
+
+    /**
+     * Empty the heap into an array ordered from nearest to farthest
+     * @return the candidate slots, nearest first
+     */
+    int[] drainSorted() {
+        int[] sorted = new int[count];
+        while (count > 0) {
+            sorted[count - 1] = slots[0];
+            count--;
+            if (count > 0)
+                siftDown(slots[count], distances[count]);
+        }
+        return sorted;
+    }
+
+    /**
+     * Place a candidate at the root and sift it down to its place
+     */
+    private void siftDown(int slot, double distance) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= count)
+                break;
+            if (child + 1 < count && distances[child + 1] > distances[child])
+                child++;
+            if (distances[child] <= distance)
+                break;
+            slots[i] = slots[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        slots[i] = slot;
+        distances[i] = distance;
+    }
+}
@@ -0,0 +1,225 @@
+package kdtree;
+
+import java.util.Arrays;
+
+/**
+ * <h1>KD-Tree of weighted points with per-subtree weight aggregates</h1>
+ *
+ * <p>
+ *     A {@link KDTree} whose nodes carry a weight and, next to the live count and bounding
+ *     box every node already keeps, the sum, minimum and maximum weight of their subtree.
+ *     The aggregates are updated along the insertion path and recomputed wherever the tree
+ *     recomputes its other subtree summaries, so they stay exact across deletes and rebuilds.
+ *     A range aggregate takes the aggregates of any subtree whose bounding box lies inside
+ *     the box in O(1), and only tests single points along the edges of the box.
+ * </p>
+ * <b>NOTE:</b> Duplicate points are discarded on insertion, keeping the weight of the first.
+ * Weights must be finite. Plain {@link KDTree}s do not pay for the aggregates.
+ */
+public class WeightedKDTree {
+    private final KDTree tree;
+
+    /**
+     * Node of the underlying tree holding the weight of its point and the aggregates of its subtree
+     */
+    private static final class WeightedNode extends KDNode {
+        private final double weight;
+        private double weightSum;
+        private double minWeight;
+        private double maxWeight;
+
+        WeightedNode(int[] point, double weight) {
+            super(point);
+            this.weight = weight;
+        }
+
+        @Override
+        void recomputeSummary() {
+            super.recomputeSummary();
+
+            weightSum = isDeleted() ? 0 : weight;
+            minWeight = isDeleted() ? Double.POSITIVE_INFINITY : weight;
+            maxWeight = isDeleted() ? Double.NEGATIVE_INFINITY : weight;
+            includeWeights((WeightedNode) getLeftChild());
+            includeWeights((WeightedNode) getRightChild());
+        }
+
+        private void includeWeights(WeightedNode child) {
+            if (child == null)
+                return;
+
+            weightSum += child.weightSum;
+            minWeight = Math.min(minWeight, child.minWeight);
+            maxWeight = Math.max(maxWeight, child.maxWeight);
+        }
+
+        @Override
+        void includeInserted(KDNode inserted) {
+            super.includeInserted(inserted);
+
+            double insertedWeight = ((WeightedNode) inserted).weight;
+            weightSum += insertedWeight;
+            minWeight = Math.min(minWeight, insertedWeight);
+            maxWeight = Math.max(maxWeight, insertedWeight);
+        }
+    }
+
+    /**
+     * Count, sum, minimum and maximum of the weights of a set of points
+     * <b>NOTE:</b> the minimum and maximum of an empty set are positive and negative infinity
+     */
+    public static final class Aggregate {
+        private int count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private Aggregate() {
+        }
+
+        private void addPoint(WeightedNode node) {
+            count++;
+            sum += node.weight;
+            min = Math.min(min, node.weight);
+            max = Math.max(max, node.weight);
+        }
+
+        private void addSubtree(WeightedNode node) {
+            count += node.getLiveCount();
+            sum += node.weightSum;
+            min = Math.min(min, node.minWeight);
+            max = Math.max(max, node.maxWeight);
+        }
+
+        public int getCount() { return count; }
+
+        public double getSum() { return sum; }
+
+        public double getMin() { return min; }
+
+        public double getMax() { return max; }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " sum=" + sum + " min=" + min + " max=" + max;
+        }
+    }
+
+    /**
+     * Ctor only for defining dimensions of WeightedKDTree
+     * @param K dimensions of the points
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     */
+    public WeightedKDTree(int K) throws InvalidInitializationException {
+        tree = new KDTree(K);
+    }
+
+    /**
+     * Ctor for a WeightedKDTree that keeps its height bounded on insertion, see {@link KDTree#KDTree(int, double)}
+     * @param K dimensions of the points
+     * @param balanceFactor fraction of a subtree one child may hold, between 0.5 and 1 (exclusive)
+     * @throws InvalidInitializationException thrown when dimensions are less than 1 or the balance factor is out of range
+     */
+    public WeightedKDTree(int K, double balanceFactor) throws InvalidInitializationException {
+        tree = new KDTree(K, balanceFactor);
+    }
+
+    /**
+     * Insert a single weighted point into the WeightedKDTree
+     * <b>NOTE:</b> the coordinates are copied, so the caller may reuse its array
+     * @param point values of each coordinate of the point to insert
+     * @param weight weight of the point
+     * @return true on success, false if the point is already in the tree
+     * @throws InvalidInitializationException thrown when dimensions are less than 1
+     * @throws NodeInsertionException thrown when point does not match dimensions of the tree or the weight is not finite
+     */
+    public boolean insert(int[] point, double weight) throws InvalidInitializationException, NodeInsertionException {
+        if (!Double.isFinite(weight))
+            throw new NodeInsertionException("Cannot insert node with weight " + weight + "."
+                    + " Please insert node with a finite weight.");
+
+        return tree.insert(new WeightedNode(point.clone(), weight));
+    }
+
+    /**
+     * Delete the point with matching coordinates and its weight
+     * @param deletePoint coordinates of the point to delete
+     * @return true if a point was deleted
+     * @throws InvalidSearchException if the point does not match the dimensions of the tree
+     */
+    public boolean delete(int... deletePoint) throws InvalidSearchException {
+        return tree.delete(deletePoint);
+    }
+
+    public boolean find(int... searchPoint) throws InvalidSearchException {
+        return tree.find(searchPoint);
+    }
+
+    /**
+     * Aggregate the weights of all points inside an axis-aligned box
+     * @param lowerCorner smallest coordinate of the box in each dimension (inclusive)
+     * @param upperCorner largest coordinate of the box in each dimension (inclusive)
+     * @return count, sum, minimum and maximum of the weights of the points inside the box
+     * @throws InvalidSearchException if the corners do not match the dimensions of the tree
+     */
+    public Aggregate rangeAggregate(int[] lowerCorner, int[] upperCorner) throws InvalidSearchException {
+        if (lowerCorner.length != getK() || upperCorner.length != getK())
+            throw new InvalidSearchException("Search box dimensions of " + lowerCorner.length
+                    + " and " + upperCorner.length + " do not match dimensions of the tree!"
+                    + " Dimension of tree is K = " + getK());
+
+        // walked without recursion, taking the aggregates of bounding boxes inside
+        // the box whole and skipping bounding boxes that miss it
+        Aggregate aggregate = new Aggregate();
+        KDNode[] stack = new KDNode[64];
+        int top = 0;
+        if (tree.getRoot() != null)
+            stack[top++] = tree.getRoot();
+        while (top > 0) {
+            WeightedNode current = (WeightedNode) stack[--top];
+            if (current.getLiveCount() == 0 || !current.boundsIntersect(lowerCorner, upperCorner))
+                continue;
+            if (current.boundsInside(lowerCorner, upperCorner)) {
+                aggregate.addSubtree(current);
+                continue;
+            }
+
+            if (!current.isDeleted() && KDTree.boxContains(lowerCorner, upperCorner, current.getPoint(), current.getPoint()))
+                aggregate.addPoint(current);
+
+            if (top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            if (current.getRightChild() != null)
+                stack[top++] = current.getRightChild();
+            if (current.getLeftChild() != null)
+                stack[top++] = current.getLeftChild();
+        }
+        return aggregate;
+    }
+
+    /**
+     * Aggregate the weights of every point, read in O(1) from the root
+     * @return count, sum, minimum and maximum of all weights
+     */
+    public Aggregate totalAggregate() {
+        Aggregate aggregate = new Aggregate();
+        WeightedNode root = (WeightedNode) tree.getRoot();
+        if (root != null && root.getLiveCount() > 0)
+            aggregate.addSubtree(root);
+        return aggregate;
+    }
+
+    public int getK() { return tree.getK(); }
+
+    public int getSize() { return tree.getSize(); }
+
+    public int height() { return tree.height(); }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("Weighted points in pre-order:");
+        tree.preOrder(node -> out.append(" ").append(Arrays.toString(node.getPoint()))
+                .append("=").append(((WeightedNode) node).weight));
+        return out.toString();
+    }
+}